@@ -0,0 +1,80 @@
+#!/usr/bin/env bash
+# Compares the servlet runtime (Tomcat, default) with the fully reactive runtime (Reactor Netty,
+# netty profile) on the same endpoints. Both runs use the same jar, JVM options, seed data and load,
+# and the in-memory H2 database of the test profile, so only the web runtime differs.
+#
+# Requires wrk (https://github.com/wg/wrk). Usage, from the project root:
+#   mvn -B package -DskipTests && scripts/compare-runtimes.sh
+# The settings below can be overridden from the environment, e.g. DURATION=60s CONNECTIONS=256
+set -euo pipefail
+
+JAR=${JAR:-target/user-management-spring-reactive-0.0.1-SNAPSHOT.jar}
+PORT=${PORT:-18080}
+JAVA_OPTS=${JAVA_OPTS:--Xms512m -Xmx512m}
+USERS=${USERS:-10000}
+THREADS=${THREADS:-4}
+CONNECTIONS=${CONNECTIONS:-64}
+WARMUP=${WARMUP:-15s}
+DURATION=${DURATION:-30s}
+OUT=${OUT:-target/runtime-comparison}
+ENDPOINTS=(
+  "/v1/users/1"
+  "/v1/users/page?size=20"
+  "/v1/users/all?page=10&size=20"
+  "/v1/users/search?name=user%201&limit=20"
+)
+
+command -v wrk >/dev/null || { echo "wrk is required" >&2; exit 1; }
+[ -f "$JAR" ] || { echo "$JAR not found, run: mvn -B package -DskipTests" >&2; exit 1; }
+mkdir -p "$OUT"
+
+start_app() {
+  # shellcheck disable=SC2086
+  java $JAVA_OPTS -jar "$JAR" --spring.profiles.active="$1" --server.port="$PORT" \
+    >"$OUT/$2-app.log" 2>&1 &
+  APP_PID=$!
+  for _ in $(seq 1 120); do
+    curl -fs "http://localhost:$PORT/actuator/health/readiness" >/dev/null && return 0
+    sleep 1
+  done
+  echo "$2 did not start, see $OUT/$2-app.log" >&2
+  kill "$APP_PID"
+  exit 1
+}
+
+seed() {
+  for i in $(seq 1 "$USERS"); do
+    echo "{\"name\":\"User $i\",\"age\":$((1 + i % 80)),\"salary\":$((i * 10)),\"email\":\"user$i@company.com\"}"
+  done | curl -fs -o /dev/null -X POST "http://localhost:$PORT/v1/users/batch" \
+    -H "Content-Type: application/x-ndjson" --data-binary @-
+}
+
+run() {
+  local runtime=$1 profiles=$2
+  echo "== $runtime ($profiles)"
+  start_app "$profiles" "$runtime"
+  seed
+  for endpoint in "${ENDPOINTS[@]}"; do
+    local url="http://localhost:$PORT$endpoint"
+    local name
+    name=$(echo "$endpoint" | tr -c 'a-zA-Z0-9\n' '_')
+    wrk -t"$THREADS" -c"$CONNECTIONS" -d"$WARMUP" "$url" >/dev/null
+    wrk -t"$THREADS" -c"$CONNECTIONS" -d"$DURATION" --latency "$url" | tee "$OUT/$runtime$name.txt"
+  done
+  kill "$APP_PID"
+  wait "$APP_PID" 2>/dev/null || true
+}
+
+run servlet test
+run netty test,netty
+
+echo
+printf "%-45s %14s %14s %12s %12s\n" endpoint servlet-req/s netty-req/s servlet-p99 netty-p99
+for endpoint in "${ENDPOINTS[@]}"; do
+  name=$(echo "$endpoint" | tr -c 'a-zA-Z0-9\n' '_')
+  printf "%-45s %14s %14s %12s %12s\n" "$endpoint" \
+    "$(awk '/Requests\/sec/ {print $2}' "$OUT/servlet$name.txt")" \
+    "$(awk '/Requests\/sec/ {print $2}' "$OUT/netty$name.txt")" \
+    "$(awk '$1 == "99%" {print $2}' "$OUT/servlet$name.txt")" \
+    "$(awk '$1 == "99%" {print $2}' "$OUT/netty$name.txt")"
+done | tee "$OUT/summary.txt"
@@ -0,0 +1,70 @@
+package com.usermanagement.reactive.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usermanagement.reactive.model.User;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * JSON and Smile serialization and deserialization of user lists, with ObjectMappers configured as
+ * Boot. The payload size of each format is printed once per trial
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JacksonBenchmark {
+  private static final TypeReference<List<User>> USER_LIST = new TypeReference<List<User>>() {};
+
+  @Param({"10", "1000"})
+  public int size;
+
+  @Param({"json", "smile"})
+  public String format;
+
+  private ObjectMapper objectMapper;
+
+  private List<User> users;
+
+  private byte[] payload;
+
+  @Setup
+  public void setup() throws IOException {
+    objectMapper =
+        format.equals("smile")
+            ? Jackson2ObjectMapperBuilder.smile().build()
+            : Jackson2ObjectMapperBuilder.json().build();
+    users = new ArrayList<>(size);
+    for (int i = 1; i <= size; i++)
+      users.add(new User(i, "User " + i, 20 + i % 50, 1000 * i, "user" + i + "@company.com"));
+    payload = objectMapper.writeValueAsBytes(users);
+    System.out.printf("%n%d users as %s: %d bytes%n", size, format, payload.length);
+  }
+
+  @Benchmark
+  public byte[] serialize() throws IOException {
+    return objectMapper.writeValueAsBytes(users);
+  }
+
+  @Benchmark
+  public List<User> deserialize() throws IOException {
+    return objectMapper.readValue(payload, USER_LIST);
+  }
+}
@@ -0,0 +1,127 @@
+package com.usermanagement.reactive.benchmark;
+
+import com.usermanagement.reactive.UserManagementApplication;
+import com.usermanagement.reactive.dto.UserDepartmentDTO;
+import com.usermanagement.reactive.model.Department;
+import com.usermanagement.reactive.model.User;
+import com.usermanagement.reactive.repository.DepartmentRepository;
+import com.usermanagement.reactive.repository.UserBatchRepository;
+import com.usermanagement.reactive.repository.UserDepartmentRepository;
+import com.usermanagement.reactive.repository.UserKeysetRepository;
+import com.usermanagement.reactive.repository.UserPaginationRepository;
+import com.usermanagement.reactive.repository.UserRepository;
+import com.usermanagement.reactive.repository.UserStreamRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Repository paths against the in-memory H2 database of the test profile, through R2DBC and the
+ * connection pool. The application context is started without a web server and seeded with USERS
+ * users, every other one with a department
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RepositoryBenchmark {
+  private static final int USERS = 10000;
+  private static final int PAGE_SIZE = 20;
+
+  private ConfigurableApplicationContext context;
+  private UserRepository userRepository;
+  private UserKeysetRepository userKeysetRepository;
+  private UserPaginationRepository userPaginationRepository;
+  private UserDepartmentRepository userDepartmentRepository;
+  private UserStreamRepository userStreamRepository;
+  private List<Integer> pageOfIds;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    context =
+        new SpringApplicationBuilder(UserManagementApplication.class)
+            .web(WebApplicationType.NONE)
+            .profiles("test")
+            .run();
+    userRepository = context.getBean(UserRepository.class);
+    userKeysetRepository = context.getBean(UserKeysetRepository.class);
+    userPaginationRepository = context.getBean(UserPaginationRepository.class);
+    userDepartmentRepository = context.getBean(UserDepartmentRepository.class);
+    userStreamRepository = context.getBean(UserStreamRepository.class);
+
+    List<User> users = new ArrayList<>(USERS);
+    for (int i = 1; i <= USERS; i++)
+      users.add(new User(null, "User " + i, 20 + i % 50, 1000 * i, "user" + i + "@company.com"));
+    DepartmentRepository departmentRepository = context.getBean(DepartmentRepository.class);
+    context
+        .getBean(UserBatchRepository.class)
+        .insertAll(users)
+        .filter(id -> id % 2 == 0)
+        .map(id -> new Department(null, "Department " + id, id, "Berlin"))
+        .buffer(500)
+        .concatMap(departmentRepository::saveAll)
+        .blockLast();
+
+    pageOfIds = new ArrayList<>(PAGE_SIZE);
+    for (int i = 1; i <= PAGE_SIZE; i++) pageOfIds.add(i * 7);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public User findById() {
+    return userRepository.findById(ThreadLocalRandom.current().nextInt(1, USERS + 1)).block();
+  }
+
+  @Benchmark
+  public List<User> keysetPage() {
+    int lastId = ThreadLocalRandom.current().nextInt(0, USERS - PAGE_SIZE);
+    return userKeysetRepository
+        .findPage("id", Sort.Direction.ASC, null, lastId == 0 ? null : lastId, PAGE_SIZE)
+        .collectList()
+        .block();
+  }
+
+  @Benchmark
+  public List<UserDepartmentDTO> usersWithDepartments() {
+    return userDepartmentRepository.findByUserIds(pageOfIds).collectList().block();
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public Long streamAll() {
+    return userStreamRepository.streamAll().count().block();
+  }
+
+  @Benchmark
+  public List<User> offsetPage() {
+    int page = ThreadLocalRandom.current().nextInt(0, USERS / PAGE_SIZE);
+    return userPaginationRepository
+        .findAllBy(PageRequest.of(page, PAGE_SIZE, Sort.by("id")))
+        .collectList()
+        .block();
+  }
+}
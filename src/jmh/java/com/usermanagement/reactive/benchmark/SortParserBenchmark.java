@@ -0,0 +1,38 @@
+package com.usermanagement.reactive.benchmark;
+
+import com.usermanagement.reactive.utilities.SortParser;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+
+/** Parsing of the sort parameter of GET /v1/users/all */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SortParserBenchmark {
+
+  private final String[] defaultSort = {"id;ASC", "name;DESC"};
+
+  private final String[] singleSort = {"age"};
+
+  @Benchmark
+  public Sort parseDefault() {
+    return SortParser.parse(defaultSort, true);
+  }
+
+  @Benchmark
+  public Sort parseSingle() {
+    return SortParser.parse(singleSort, true);
+  }
+}
@@ -0,0 +1,51 @@
+package com.usermanagement.reactive.benchmark;
+
+import com.usermanagement.reactive.utilities.TextSanitizer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** TextSanitizer.sanitize on text that is already clean and on text it has to rewrite */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TextSanitizerBenchmark {
+
+  @Param({"clean", "dirty", "long"})
+  public String input;
+
+  private String text;
+
+  @Setup
+  public void setup() {
+    switch (input) {
+      case "clean":
+        text = "Jordan Sun";
+        break;
+      case "dirty":
+        text = "  O'Brien,   \"Jordan\"   (Sun)!  ";
+        break;
+      default:
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50; i++) builder.append("Jordan’s [name] #").append(i).append("   ");
+        text = builder.toString();
+    }
+  }
+
+  @Benchmark
+  public String sanitize() {
+    return TextSanitizer.sanitize(text);
+  }
+}
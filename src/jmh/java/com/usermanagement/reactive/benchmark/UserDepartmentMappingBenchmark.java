@@ -0,0 +1,54 @@
+package com.usermanagement.reactive.benchmark;
+
+import com.usermanagement.reactive.dto.UserDepartmentDTO;
+import com.usermanagement.reactive.model.Department;
+import com.usermanagement.reactive.model.User;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Mapping of a user and its department to the UserDepartmentDTO returned by the API */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserDepartmentMappingBenchmark {
+
+  private final User user = new User(1, "Jordan Sun", 30, 10000, "jordansun@company.com");
+
+  private final Department department = new Department(1, "Engineering", 1, "Berlin");
+
+  @Benchmark
+  public UserDepartmentDTO builder() {
+    return UserDepartmentDTO.builder()
+        .userId(user.getId())
+        .userName(user.getName())
+        .age(user.getAge())
+        .salary(user.getSalary())
+        .departmentId(department.getId())
+        .departmentName(department.getName())
+        .loc(department.getLoc())
+        .build();
+  }
+
+  @Benchmark
+  public UserDepartmentDTO constructor() {
+    return new UserDepartmentDTO(
+        user.getId(),
+        user.getName(),
+        user.getAge(),
+        user.getSalary(),
+        department.getId(),
+        department.getName(),
+        department.getLoc());
+  }
+}
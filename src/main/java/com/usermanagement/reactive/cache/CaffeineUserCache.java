@@ -0,0 +1,93 @@
+package com.usermanagement.reactive.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.usermanagement.reactive.model.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Size and TTL bounded user cache backed by Caffeine. Loads are kept in the cache as futures, so an
+ * invalidation or a write that happens while a user is being loaded also drops the stale load.
+ * Deleted users are kept as empty values. Hit, miss and eviction statistics are published to
+ * actuator under the cache.* metrics with cache=users
+ */
+@Component
+@ConditionalOnProperty(value = "app.users.cache.enabled", matchIfMissing = true)
+public class CaffeineUserCache implements UserCache, MeterBinder {
+
+  private final AsyncCache<Integer, Optional<User>> cache;
+
+  public CaffeineUserCache(
+      @Value("${app.users.cache.maximum-size:10000}") long maximumSize,
+      @Value("${app.users.cache.ttl:5m}") Duration ttl) {
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .buildAsync();
+  }
+
+  @Override
+  public Mono<User> get(Integer userId, Function<Integer, Mono<User>> loader) {
+    // A user which does not exist loads as null, which Caffeine does not keep
+    return Mono.fromFuture(
+            cache.get(userId, (id, executor) -> loader.apply(id).map(Optional::of).toFuture()))
+        .flatMap(Mono::justOrEmpty);
+  }
+
+  @Override
+  public void put(User user) {
+    cache
+        .asMap()
+        .merge(
+            user.getId(),
+            CompletableFuture.completedFuture(Optional.of(user)),
+            CaffeineUserCache::latest);
+  }
+
+  @Override
+  public void putDeleted(Integer userId) {
+    cache.put(userId, CompletableFuture.completedFuture(Optional.empty()));
+  }
+
+  // Writes are notified once committed, possibly out of order. An older version does not replace a
+  // newer one, nor a deletion
+  private static CompletableFuture<Optional<User>> latest(
+      CompletableFuture<Optional<User>> cached, CompletableFuture<Optional<User>> written) {
+    if (!cached.isDone() || cached.isCompletedExceptionally()) return written;
+    Optional<User> current = cached.join();
+    if (current == null) return written;
+    if (!current.isPresent()) return cached;
+    Long currentVersion = current.get().getVersion();
+    Long writtenVersion = written.join().get().getVersion();
+    return currentVersion != null && writtenVersion != null && currentVersion > writtenVersion
+        ? cached
+        : written;
+  }
+
+  @Override
+  public void invalidate(Integer userId) {
+    cache.synchronous().invalidate(userId);
+  }
+
+  @Override
+  public void invalidateAll() {
+    cache.synchronous().invalidateAll();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    CaffeineCacheMetrics.monitor(registry, cache, "users");
+  }
+}
@@ -0,0 +1,30 @@
+package com.usermanagement.reactive.cache;
+
+import com.usermanagement.reactive.model.User;
+import java.util.function.Function;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/** Used when the user cache is disabled, every lookup goes to the database */
+@Component
+@ConditionalOnProperty(value = "app.users.cache.enabled", havingValue = "false")
+public class NoOpUserCache implements UserCache {
+
+  @Override
+  public Mono<User> get(Integer userId, Function<Integer, Mono<User>> loader) {
+    return loader.apply(userId);
+  }
+
+  @Override
+  public void put(User user) {}
+
+  @Override
+  public void putDeleted(Integer userId) {}
+
+  @Override
+  public void invalidate(Integer userId) {}
+
+  @Override
+  public void invalidateAll() {}
+}
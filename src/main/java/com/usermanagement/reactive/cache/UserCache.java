@@ -0,0 +1,42 @@
+package com.usermanagement.reactive.cache;
+
+import com.usermanagement.reactive.model.User;
+import com.usermanagement.reactive.service.UserChangeListener;
+import java.util.function.Function;
+import reactor.core.publisher.Mono;
+
+/**
+ * In-process cache in front of the user lookups by id. The implementation is picked with the
+ * app.users.cache.enabled property. Created and updated users are cached right away, and deleted
+ * users are remembered as deleted, so that a read replica lagging behind does not load them again
+ */
+public interface UserCache extends UserChangeListener {
+
+  /** Returns the cached user, or loads it with the given loader and caches it when it exists */
+  Mono<User> get(Integer userId, Function<Integer, Mono<User>> loader);
+
+  /** Caches the user, unless a newer version of it is cached or it was deleted */
+  void put(User user);
+
+  /** Answers the lookups of the user with nothing until it expires */
+  void putDeleted(Integer userId);
+
+  void invalidate(Integer userId);
+
+  void invalidateAll();
+
+  @Override
+  default void onCreated(User user) {
+    put(user);
+  }
+
+  @Override
+  default void onUpdated(User before, User after) {
+    put(after);
+  }
+
+  @Override
+  default void onDeleted(User user) {
+    putDeleted(user.getId());
+  }
+}
@@ -0,0 +1,265 @@
+package com.usermanagement.reactive.changes;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usermanagement.reactive.config.R2dbcPoolConfiguration;
+import com.usermanagement.reactive.dto.UserChangeEventDTO;
+import com.usermanagement.reactive.dto.UserChangeEventDTO.Type;
+import com.usermanagement.reactive.model.User;
+import com.usermanagement.reactive.service.UserChangeListener;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+
+/**
+ * Live feed of the user changes, served by GET /v1/users/changes. Every UserService write becomes a
+ * CREATED, UPDATED or DELETED event, and RESYNC tells the subscribers to read the users again,
+ * after an import or when the events they missed are not kept anymore. Events are numbered in the
+ * order they are published, and the last app.users.changes.buffer-size ones are kept so that a
+ * subscriber can resume after the last sequence it saw.
+ *
+ * <p>Each subscriber has its own buffer of app.users.changes.subscriber-buffer events, rounded up
+ * to a power of two and at least 8. A subscriber falling that far behind is dropped: its stream
+ * completes and it may resume from where it stopped.
+ *
+ * <p>On PostgreSQL the events go through NOTIFY and come back on a dedicated LISTEN connection, so
+ * every instance sees the writes of the others. Sequences are numbered by each instance. Elsewhere
+ * the events are published in-process
+ */
+@Component
+@Slf4j
+public class UserChangeFeed implements UserChangeListener {
+  private static final String CHANNEL = "user_changes";
+
+  private final UserChangeEventDTO[] recent;
+  private final int subscriberBuffer;
+  private final Set<Sinks.Many<UserChangeEventDTO>> subscribers = new LinkedHashSet<>();
+  private int kept;
+
+  // Sequences start from the startup time, so that one handed out before a restart or by another
+  // instance is very unlikely to be among the kept events, and gets a RESYNC instead
+  private long sequence = System.currentTimeMillis() * 1000;
+
+  @Autowired private ConnectionFactory connectionFactory;
+
+  @Autowired private DatabaseClient databaseClient;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  // Events waiting to be sent with NOTIFY, one at a time so that they keep their order
+  private final Sinks.Many<String> outgoing = Sinks.many().unicast().onBackpressureBuffer();
+
+  private Disposable.Composite notifying;
+
+  public UserChangeFeed(
+      @Value("${app.users.changes.buffer-size:1024}") int bufferSize,
+      @Value("${app.users.changes.subscriber-buffer:256}") int subscriberBuffer) {
+    this.recent = new UserChangeEventDTO[bufferSize];
+    this.subscriberBuffer = subscriberBuffer;
+  }
+
+  @PostConstruct
+  public void listen() {
+    if (!connectionFactory.getMetadata().getName().equalsIgnoreCase("PostgreSQL")) return;
+    notifying = Disposables.composite(notifications().subscribe(this::received), sendNotifies());
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (notifying != null) notifying.dispose();
+  }
+
+  /**
+   * Emits the events after the given sequence which are still kept, or a RESYNC when some are not,
+   * and then the live ones. Without a sequence the stream starts with a RESYNC carrying the current
+   * sequence: the users read after it are up to date with the events which follow it
+   */
+  public Flux<UserChangeEventDTO> subscribe(Long after) {
+    return Flux.defer(
+        () -> {
+          Sinks.Many<UserChangeEventDTO> subscriber =
+              Sinks.many()
+                  .unicast()
+                  .onBackpressureBuffer(Queues.<UserChangeEventDTO>get(subscriberBuffer).get());
+          List<UserChangeEventDTO> missed;
+          synchronized (this) {
+            missed = after == null ? Collections.singletonList(resync()) : since(after);
+            subscribers.add(subscriber);
+          }
+          return Flux.fromIterable(missed)
+              .concatWith(subscriber.asFlux())
+              .doFinally(signal -> unsubscribe(subscriber));
+        });
+  }
+
+  /** Tells the subscribers to read the users again, after writes which bypassed UserService */
+  public void publishResync() {
+    publish(Type.RESYNC, null);
+  }
+
+  public synchronized int subscribers() {
+    return subscribers.size();
+  }
+
+  @Override
+  public void onCreated(User user) {
+    publish(Type.CREATED, user);
+  }
+
+  @Override
+  public void onUpdated(User before, User after) {
+    publish(Type.UPDATED, after);
+  }
+
+  @Override
+  public void onDeleted(User user) {
+    publish(Type.DELETED, user);
+  }
+
+  private void publish(Type type, User user) {
+    if (notifying == null) {
+      append(type, user);
+      return;
+    }
+    try {
+      String payload =
+          objectMapper.writeValueAsString(
+              new UserChangeEventDTO(0, type, user == null ? null : user.getId(), user));
+      synchronized (outgoing) {
+        outgoing.tryEmitNext(payload);
+      }
+    } catch (JsonProcessingException e) {
+      log.warn("Could not publish a {} user change", type, e);
+    }
+  }
+
+  private synchronized void append(Type type, User user) {
+    UserChangeEventDTO event =
+        new UserChangeEventDTO(++sequence, type, user == null ? null : user.getId(), user);
+    recent[(int) (sequence % recent.length)] = event;
+    if (kept < recent.length) kept++;
+    for (Iterator<Sinks.Many<UserChangeEventDTO>> it = subscribers.iterator(); it.hasNext(); ) {
+      Sinks.Many<UserChangeEventDTO> subscriber = it.next();
+      Sinks.EmitResult result = subscriber.tryEmitNext(event);
+      if (result.isSuccess()) continue;
+      it.remove();
+      if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+        log.warn("Dropped a user changes subscriber {} events behind", subscriberBuffer);
+        subscriber.tryEmitComplete();
+      }
+    }
+  }
+
+  // Called with the lock held
+  private List<UserChangeEventDTO> since(long after) {
+    if (after == sequence) return Collections.emptyList();
+    if (after > sequence || after < sequence - kept) return Collections.singletonList(resync());
+    List<UserChangeEventDTO> missed = new ArrayList<>((int) (sequence - after));
+    for (long s = after + 1; s <= sequence; s++) missed.add(recent[(int) (s % recent.length)]);
+    return missed;
+  }
+
+  private UserChangeEventDTO resync() {
+    return new UserChangeEventDTO(sequence, Type.RESYNC, null, null);
+  }
+
+  private synchronized void unsubscribe(Sinks.Many<UserChangeEventDTO> subscriber) {
+    subscribers.remove(subscriber);
+  }
+
+  private Disposable sendNotifies() {
+    return outgoing
+        .asFlux()
+        .concatMap(
+            payload ->
+                databaseClient
+                    .sql("SELECT pg_notify(:channel, :payload)")
+                    .bind("channel", CHANNEL)
+                    .bind("payload", payload)
+                    .then()
+                    .onErrorResume(
+                        e -> {
+                          // No instance will see the change, at least the subscribers of this one
+                          // are told to read the users again
+                          log.warn("Could not notify a user change, publishing a RESYNC", e);
+                          append(Type.RESYNC, null);
+                          return Mono.empty();
+                        }))
+        .subscribe();
+  }
+
+  // The notifications arrive on a connection of its own, outside the pool. It is opened again when
+  // it is lost or its notifications end, and as some may have been missed meanwhile, a RESYNC is
+  // published
+  private Flux<String> notifications() {
+    ConnectionFactory direct =
+        R2dbcPoolConfiguration.findPool(connectionFactory)
+            .<ConnectionFactory>map(ConnectionPool::unwrap)
+            .orElse(connectionFactory);
+    boolean[] listened = {false};
+    return Flux.usingWhen(
+            direct.create(),
+            connection ->
+                Flux.from(connection.createStatement("LISTEN " + CHANNEL).execute())
+                    .flatMap(Result::getRowsUpdated)
+                    .thenMany(
+                        Flux.defer(
+                            () -> {
+                              if (!(connection instanceof PostgresqlConnection))
+                                return Flux.error(
+                                    new IllegalStateException(
+                                        "Cannot listen on " + connection.getClass().getName()));
+                              if (listened[0]) append(Type.RESYNC, null);
+                              listened[0] = true;
+                              log.info("Listening to the {} notifications", CHANNEL);
+                              return ((PostgresqlConnection) connection).getNotifications();
+                            }))
+                    .map(Notification::getParameter)
+                    // Ending is a failure too, so that it is retried with the same backoff
+                    .concatWith(
+                        Flux.error(new IllegalStateException("The notifications have ended"))),
+            Connection::close)
+        .retryWhen(
+            Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                .maxBackoff(Duration.ofSeconds(30))
+                .doBeforeRetry(
+                    signal ->
+                        log.warn(
+                            "Lost the {} notifications, listening again",
+                            CHANNEL,
+                            signal.failure())));
+  }
+
+  private void received(String payload) {
+    try {
+      UserChangeEventDTO event = objectMapper.readValue(payload, UserChangeEventDTO.class);
+      append(event.getType(), event.getUser());
+    } catch (JsonProcessingException e) {
+      log.warn("Ignored a malformed {} notification", CHANNEL, e);
+    }
+  }
+}
@@ -1,46 +1,241 @@
 package com.usermanagement.reactive.client;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.usermanagement.reactive.model.User;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import javax.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
-/** UserClient uses WebClient to consume the Rest API */
+/**
+ * UserClient uses WebClient to consume the Rest API. Every call has a deadline. GETs are idempotent
+ * and are retried with a jittered backoff on connection errors and on 5xx and 429 responses, and
+ * getUser can be hedged: a second request is sent when the first one has not answered after
+ * app.client.hedge.delay, and the first answer wins. Users are kept with their ETag and revalidated
+ * with If-None-Match, so unchanged ones are not downloaded again.
+ *
+ * <p>With app.client.smile, users are exchanged as Smile, the binary JSON of Jackson, which is
+ * smaller and cheaper to encode. JSON stays acceptable, for servers which do not speak Smile. Such
+ * a server answers the Smile user of createUser with 415, it is then sent again as JSON, as are the
+ * next ones
+ */
 @Component
 @Slf4j
 public class UserClient {
-  private WebClient client = WebClient.create("http://localhost:8080");
+  private static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+  private static final MediaType JSON_FALLBACK =
+      MediaType.valueOf(MediaType.APPLICATION_JSON_VALUE + ";q=0.9");
+
+  @Autowired private WebClient userWebClient;
+
+  @Value("${app.client.deadline:10s}")
+  private Duration deadline;
+
+  @Value("${app.client.retry.max-retries:2}")
+  private int maxRetries;
+
+  @Value("${app.client.retry.min-backoff:100ms}")
+  private Duration minBackoff;
+
+  @Value("${app.client.retry.jitter:0.5}")
+  private double jitter;
+
+  @Value("${app.client.hedge.enabled:false}")
+  private boolean hedgeEnabled;
+
+  @Value("${app.client.hedge.delay:50ms}")
+  private Duration hedgeDelay;
+
+  @Value("${app.client.cache.maximum-size:1000}")
+  private long cacheMaximumSize;
+
+  @Value("${app.client.smile:true}")
+  private boolean smile;
+
+  // Content type of the sent users, and accepted types of the received ones. JSON is sent once the
+  // server turned Smile down
+  private volatile MediaType payloadType;
+
+  private MediaType[] accept;
+
+  // Users received with an ETag, revalidated with If-None-Match instead of being downloaded again
+  private Cache<String, Tagged<User>> users;
+
+  private volatile Tagged<List<User>> allUsers;
+
+  @PostConstruct
+  public void init() {
+    users = Caffeine.newBuilder().maximumSize(cacheMaximumSize).build();
+    payloadType = smile ? SMILE : MediaType.APPLICATION_JSON;
+    accept =
+        smile
+            ? new MediaType[] {SMILE, JSON_FALLBACK}
+            : new MediaType[] {MediaType.APPLICATION_JSON};
+  }
 
   public Mono<User> getUser(String userId) {
-    return client
-        .get()
-        .uri("/users/{userId}", userId)
-        .retrieve()
-        .bodyToMono(User.class)
-        .log(" User fetched ");
+    // Not found is turned into a value, so that it wins a hedged request like any other answer
+    Mono<Optional<User>> request =
+        Mono.defer(
+                () -> {
+                  Tagged<User> cached = users.getIfPresent(userId);
+                  return userWebClient
+                      .get()
+                      .uri("/v1/users/{userId}", userId)
+                      .accept(accept)
+                      .headers(headers -> ifNoneMatch(headers, cached))
+                      .<Optional<User>>exchangeToMono(
+                          response -> {
+                            if (isNotModified(response, cached))
+                              return response.releaseBody().thenReturn(Optional.of(cached.value));
+                            if (response.statusCode() == HttpStatus.NOT_FOUND) {
+                              users.invalidate(userId);
+                              return response.releaseBody().thenReturn(Optional.<User>empty());
+                            }
+                            if (response.statusCode().isError())
+                              return response.createException().flatMap(Mono::error);
+                            return response
+                                .bodyToMono(User.class)
+                                .doOnNext(
+                                    user ->
+                                        etagOf(response)
+                                            .ifPresent(
+                                                etag ->
+                                                    users.put(userId, new Tagged<>(etag, user))))
+                                .map(Optional::of);
+                          });
+                })
+            .defaultIfEmpty(Optional.empty())
+            .retryWhen(retry());
+    return hedged(request)
+        .timeout(deadline)
+        .flatMap(Mono::justOrEmpty)
+        .log(" User fetched ", Level.FINE);
   }
 
+  // The retried failures all happen before the first user is received, so no user is repeated.
+  // The deadline applies to the whole call, however steadily the users arrive
   public Flux<User> getAllUsers() {
-    return client
-        .get()
-        .uri("/users")
-        .exchange()
-        .flatMapMany(clientResponse -> clientResponse.bodyToFlux(User.class))
-        .log("Users Fetched : ");
+    return Flux.defer(
+            () -> {
+              Tagged<List<User>> cached = allUsers;
+              return userWebClient
+                  .get()
+                  .uri("/v1/users")
+                  .accept(accept)
+                  .headers(headers -> ifNoneMatch(headers, cached))
+                  .exchangeToFlux(
+                      response -> {
+                        if (isNotModified(response, cached))
+                          return response.releaseBody().thenMany(Flux.fromIterable(cached.value));
+                        if (response.statusCode().isError())
+                          return response.createException().flatMapMany(Mono::error);
+                        // The users are passed on as they arrive and kept once they all have
+                        List<User> received = new ArrayList<>();
+                        return response
+                            .bodyToFlux(User.class)
+                            .doOnNext(received::add)
+                            .doOnComplete(
+                                () ->
+                                    etagOf(response)
+                                        .ifPresent(
+                                            etag -> allUsers = new Tagged<>(etag, received)));
+                      });
+            })
+        .retryWhen(retry())
+        .takeUntilOther(
+            Mono.delay(deadline)
+                .then(
+                    Mono.error(
+                        () ->
+                            new TimeoutException(
+                                "Did not receive all the users within " + deadline))))
+        .log("Users Fetched : ", Level.FINE);
   }
 
+  // Not retried, as creating a user is not idempotent. A 415 means that it was not created, so a
+  // Smile user is sent again as JSON
   public Mono<User> createUser(User user) {
-    Mono<User> userMono = Mono.just(user);
-    return client
+    return Mono.defer(
+            () -> {
+              MediaType sent = payloadType;
+              return postUser(user, sent)
+                  .onErrorResume(
+                      WebClientResponseException.UnsupportedMediaType.class,
+                      e -> {
+                        if (!sent.equals(SMILE)) return Mono.error(e);
+                        log.info("The server does not read Smile, users are sent as JSON");
+                        payloadType = MediaType.APPLICATION_JSON;
+                        return postUser(user, MediaType.APPLICATION_JSON);
+                      });
+            })
+        .timeout(deadline)
+        .log("Created User : ", Level.FINE);
+  }
+
+  private Mono<User> postUser(User user, MediaType contentType) {
+    return userWebClient
         .post()
-        .uri("/users")
-        .contentType(MediaType.APPLICATION_JSON)
-        .body(userMono, User.class)
+        .uri("/v1/users")
+        .contentType(contentType)
+        .accept(accept)
+        .body(Mono.just(user), User.class)
         .retrieve()
-        .bodyToMono(User.class)
-        .log("Created User : ");
+        .bodyToMono(User.class);
+  }
+
+  private static void ifNoneMatch(HttpHeaders headers, Tagged<?> cached) {
+    if (cached != null) headers.setIfNoneMatch(cached.etag);
+  }
+
+  private static boolean isNotModified(ClientResponse response, Tagged<?> cached) {
+    return cached != null && response.statusCode() == HttpStatus.NOT_MODIFIED;
+  }
+
+  private static Optional<String> etagOf(ClientResponse response) {
+    return Optional.ofNullable(response.headers().asHttpHeaders().getETag());
+  }
+
+  @lombok.Value
+  private static class Tagged<T> {
+    String etag;
+    T value;
+  }
+
+  private <T> Mono<T> hedged(Mono<T> request) {
+    if (!hedgeEnabled) return request;
+    return Mono.firstWithValue(request, Mono.delay(hedgeDelay).then(request));
+  }
+
+  private Retry retry() {
+    return Retry.backoff(maxRetries, minBackoff)
+        .jitter(jitter)
+        .filter(UserClient::isRetryable)
+        .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+  }
+
+  private static boolean isRetryable(Throwable e) {
+    if (e instanceof WebClientRequestException) return true;
+    if (!(e instanceof WebClientResponseException)) return false;
+    int status = ((WebClientResponseException) e).getRawStatusCode();
+    return status >= 500 || status == 429;
   }
 }
@@ -0,0 +1,85 @@
+package com.usermanagement.reactive.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Wraps the connection pool, or a factory delegating to it, to time how long callers wait for a
+ * connection. The waits are published as the r2dbc.pool.acquire timer, tagged with the outcome of
+ * the acquisition. Disposing it disposes the pool
+ */
+public class AcquireTimingConnectionFactory
+    implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+
+  private final ConnectionFactory delegate;
+  private final ConnectionPool pool;
+  private final ObjectProvider<MeterRegistry> meterRegistry;
+  private volatile Timer success;
+  private volatile Timer failure;
+
+  public AcquireTimingConnectionFactory(
+      ConnectionFactory delegate,
+      ConnectionPool pool,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    this.delegate = delegate;
+    this.pool = pool;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public Mono<Connection> create() {
+    return Mono.defer(
+        () -> {
+          long start = System.nanoTime();
+          return Mono.from(delegate.create())
+              .doOnSuccess(connection -> record(success, "success", start))
+              .doOnError(e -> record(failure, "failure", start));
+        });
+  }
+
+  private void record(Timer timer, String outcome, long start) {
+    if (timer == null) {
+      MeterRegistry registry = meterRegistry.getIfAvailable();
+      if (registry == null) return;
+      timer =
+          Timer.builder("r2dbc.pool.acquire")
+              .description("Time spent waiting for a connection from the pool")
+              .tag("name", "connectionFactory")
+              .tag("outcome", outcome)
+              .publishPercentileHistogram()
+              .register(registry);
+      if (outcome.equals("success")) success = timer;
+      else failure = timer;
+    }
+    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public ConnectionFactoryMetadata getMetadata() {
+    return delegate.getMetadata();
+  }
+
+  @Override
+  public ConnectionFactory unwrap() {
+    return delegate;
+  }
+
+  @Override
+  public void dispose() {
+    pool.dispose();
+  }
+
+  @Override
+  public boolean isDisposed() {
+    return pool.isDisposed();
+  }
+}
@@ -0,0 +1,49 @@
+package com.usermanagement.reactive.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import java.time.Duration;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * Reports the connection pool as down once it has stayed saturated, every connection in use and
+ * callers waiting for one, for longer than the saturation timeout. It is part of the readiness
+ * group so that a saturated instance stops receiving traffic. Saturation is sampled every time the
+ * health is checked
+ */
+public class ConnectionPoolHealthIndicator implements HealthIndicator {
+
+  private final ConnectionPool pool;
+  private final Duration saturationTimeout;
+  private volatile long saturatedSince;
+
+  public ConnectionPoolHealthIndicator(ConnectionPool pool, Duration saturationTimeout) {
+    this.pool = pool;
+    this.saturationTimeout = saturationTimeout;
+  }
+
+  @Override
+  public Health health() {
+    PoolMetrics metrics = pool.getMetrics().orElse(null);
+    if (metrics == null) return Health.unknown().build();
+
+    boolean saturated =
+        metrics.acquiredSize() >= metrics.getMaxAllocatedSize() && metrics.pendingAcquireSize() > 0;
+    long now = System.nanoTime();
+    if (!saturated) saturatedSince = 0;
+    else if (saturatedSince == 0) saturatedSince = now;
+
+    Health.Builder health =
+        saturated && now - saturatedSince > saturationTimeout.toNanos()
+            ? Health.down()
+            : Health.up();
+    return health
+        .withDetail("acquired", metrics.acquiredSize())
+        .withDetail("idle", metrics.idleSize())
+        .withDetail("pending", metrics.pendingAcquireSize())
+        .withDetail("maxSize", metrics.getMaxAllocatedSize())
+        .withDetail("saturated", saturated)
+        .build();
+  }
+}
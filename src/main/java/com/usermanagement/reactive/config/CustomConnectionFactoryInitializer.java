@@ -10,7 +10,8 @@ import org.springframework.data.r2dbc.connectionfactory.init.ResourceDatabasePop
 
 /**
  * On application startup, resources/schema.sql file is executed against the database to create
- * initial tables/data
+ * initial tables/data. Statements only valid on one database go to resources/schema-{database}.sql,
+ * e.g. schema-postgresql.sql, which is executed afterwards when it exists
  */
 @Configuration
 public class CustomConnectionFactoryInitializer {
@@ -20,6 +21,11 @@ public class CustomConnectionFactoryInitializer {
     initializer.setConnectionFactory(connectionFactory);
     CompositeDatabasePopulator populator = new CompositeDatabasePopulator();
     populator.addPopulators(new ResourceDatabasePopulator(new ClassPathResource("schema.sql")));
+    ClassPathResource platformSchema =
+        new ClassPathResource(
+            "schema-" + connectionFactory.getMetadata().getName().toLowerCase() + ".sql");
+    if (platformSchema.exists())
+      populator.addPopulators(new ResourceDatabasePopulator(platformSchema));
     initializer.setDatabasePopulator(populator);
     return initializer;
   }
@@ -0,0 +1,39 @@
+package com.usermanagement.reactive.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Reactor Netty server used when the application runs fully reactive (netty profile). Tomcat is on
+ * the classpath as well and would otherwise be picked for the reactive server too.
+ *
+ * <p>Request handling runs on the worker event loops, so it must never block. A thread count of 0
+ * keeps the Reactor Netty default: one worker per core (at least 4), with the selector sharing the
+ * worker threads
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class NettyServerConfiguration {
+
+  @Bean(destroyMethod = "dispose")
+  public LoopResources serverLoopResources(
+      @Value("${app.netty.worker-threads:0}") int workerThreads,
+      @Value("${app.netty.select-threads:0}") int selectThreads) {
+    int workers = workerThreads > 0 ? workerThreads : LoopResources.DEFAULT_IO_WORKER_COUNT;
+    return selectThreads > 0
+        ? LoopResources.create("http-server", selectThreads, workers, true)
+        : LoopResources.create("http-server", workers, true);
+  }
+
+  @Bean
+  public NettyReactiveWebServerFactory nettyReactiveWebServerFactory(
+      LoopResources serverLoopResources) {
+    NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory();
+    factory.addServerCustomizers(httpServer -> httpServer.runOn(serverLoopResources));
+    return factory;
+  }
+}
@@ -0,0 +1,84 @@
+package com.usermanagement.reactive.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.proxy.core.Bindings;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Times every statement run through the connection factory proxy as the r2dbc.query timer, tagged
+ * with the shape of the query: its SQL with the values and bind markers replaced by ? and the lists
+ * collapsed. The time runs until the results have been consumed. Statements slower than the
+ * threshold are logged as slow queries with their numbers of bound values and rows
+ */
+@Slf4j
+public class QueryMetricsListener implements ProxyExecutionListener {
+  private static final int MAX_CACHED_SHAPES = 1000;
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+  private static final Pattern VALUE =
+      Pattern.compile("'(?:[^']|'')*'|\\$\\d+|:\\w+|\\?|(?<![\\w.])\\d+(?:\\.\\d+)?(?![\\w.])");
+  private static final Pattern LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+  private static final Pattern ROWS = Pattern.compile("\\(\\?\\)(?:\\s*,\\s*\\(\\?\\))+");
+
+  private final ObjectProvider<MeterRegistry> meterRegistry;
+  private final Duration slowQueryThreshold;
+  private final Map<String, String> shapes = new ConcurrentHashMap<>();
+
+  public QueryMetricsListener(
+      ObjectProvider<MeterRegistry> meterRegistry, Duration slowQueryThreshold) {
+    this.meterRegistry = meterRegistry;
+    this.slowQueryThreshold = slowQueryThreshold;
+  }
+
+  @Override
+  public void afterQuery(QueryExecutionInfo execution) {
+    String query =
+        execution.getQueries().stream().map(QueryInfo::getQuery).collect(Collectors.joining("; "));
+    String shape =
+        shapes.size() < MAX_CACHED_SHAPES
+            ? shapes.computeIfAbsent(query, QueryMetricsListener::shape)
+            : shape(query);
+    Duration duration = execution.getExecuteDuration();
+
+    MeterRegistry registry = meterRegistry.getIfAvailable();
+    if (registry != null)
+      Timer.builder("r2dbc.query")
+          .description("Time spent running a statement and reading its results")
+          .tag("shape", shape)
+          .tag("outcome", execution.isSuccess() ? "success" : "failure")
+          .register(registry)
+          .record(duration);
+
+    if (duration.compareTo(slowQueryThreshold) >= 0)
+      log.warn(
+          "Slow query took {}ms, {} bound values, {} rows: {}",
+          duration.toMillis(),
+          boundValues(execution),
+          execution.getCurrentResultCount(),
+          query);
+  }
+
+  /** The query with its values and bind markers replaced by ? and lists collapsed to (?) */
+  public static String shape(String query) {
+    String shape = VALUE.matcher(WHITESPACE.matcher(query.trim()).replaceAll(" ")).replaceAll("?");
+    shape = LIST.matcher(shape).replaceAll("(?)");
+    return ROWS.matcher(shape).replaceAll("(?)");
+  }
+
+  private static int boundValues(QueryExecutionInfo execution) {
+    int count = 0;
+    for (QueryInfo query : execution.getQueries())
+      for (Bindings bindings : query.getBindingsList())
+        count += bindings.getIndexBindings().size() + bindings.getNamedBindings().size();
+    return count;
+  }
+}
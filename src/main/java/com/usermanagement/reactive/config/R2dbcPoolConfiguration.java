@@ -0,0 +1,127 @@
+package com.usermanagement.reactive.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.proxy.ProxyConnectionFactory;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.metrics.r2dbc.ConnectionPoolMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * The connection pool itself is configured per profile with the spring.r2dbc.pool.* properties.
+ * This configuration adds the pool metrics (r2dbc.pool.acquired, idle, pending, allocated and the
+ * r2dbc.pool.acquire wait timer), the r2dbc.query statement timings with the slow query log, and
+ * the r2dbcPool health indicator used by the readiness probe. When app.r2dbc.replicas.urls lists
+ * read replicas, each gets a pool of its own and the read-only work is routed to them, see
+ * ReplicaRoutingConnectionFactory
+ */
+@Configuration
+public class R2dbcPoolConfiguration {
+
+  // Statements are timed by a proxy around the pool, and the acquisitions around that proxy
+  @Bean
+  public static BeanPostProcessor connectionPoolInstrumentation(
+      ObjectProvider<MeterRegistry> meterRegistry, Environment environment) {
+    Duration slowQueryThreshold =
+        environment.getProperty(
+            "app.r2dbc.slow-query-threshold", Duration.class, Duration.ofMillis(500));
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof ConnectionPool)) return bean;
+        ConnectionPool pool = (ConnectionPool) bean;
+        QueryMetricsListener queryMetrics =
+            new QueryMetricsListener(meterRegistry, slowQueryThreshold);
+        ConnectionFactory primary =
+            new AcquireTimingConnectionFactory(
+                ProxyConnectionFactory.builder(pool).listener(queryMetrics).build(),
+                pool,
+                meterRegistry);
+        List<ConnectionFactory> replicas = replicas(environment, queryMetrics);
+        return replicas.isEmpty()
+            ? primary
+            : new ReplicaRoutingConnectionFactory(primary, replicas);
+      }
+    };
+  }
+
+  // The replica statements are timed with the primary ones
+  private static List<ConnectionFactory> replicas(
+      Environment environment, QueryMetricsListener queryMetrics) {
+    String[] urls = environment.getProperty("app.r2dbc.replicas.urls", String[].class);
+    if (urls == null) return Collections.emptyList();
+    int maxSize = environment.getProperty("app.r2dbc.replicas.pool.max-size", Integer.class, 10);
+    Duration maxAcquireTime =
+        environment.getProperty(
+            "app.r2dbc.replicas.pool.max-acquire-time", Duration.class, Duration.ofSeconds(5));
+    List<ConnectionFactory> replicas = new ArrayList<>(urls.length);
+    for (String url : urls) {
+      if (url.trim().isEmpty()) continue;
+      ConnectionPool pool =
+          new ConnectionPool(
+              ConnectionPoolConfiguration.builder(ConnectionFactories.get(url.trim()))
+                  .initialSize(1)
+                  .maxSize(maxSize)
+                  .maxAcquireTime(maxAcquireTime)
+                  .validationQuery("SELECT 1")
+                  .build());
+      replicas.add(ProxyConnectionFactory.builder(pool).listener(queryMetrics).build());
+    }
+    return replicas;
+  }
+
+  // Keeps a new query shape from adding r2dbc.query timers once there are that many
+  @Bean
+  public MeterFilter queryShapeLimit(
+      @Value("${app.r2dbc.max-query-shapes:200}") int maxQueryShapes) {
+    return MeterFilter.maximumAllowableTags(
+        "r2dbc.query", "shape", maxQueryShapes, MeterFilter.deny());
+  }
+
+  @Bean
+  public MeterBinder connectionPoolMetrics(ConnectionFactory connectionFactory) {
+    return registry ->
+        findPool(connectionFactory)
+            .ifPresent(
+                pool ->
+                    new ConnectionPoolMetrics(pool, "connectionFactory", Tags.empty())
+                        .bindTo(registry));
+  }
+
+  @Bean
+  public HealthIndicator r2dbcPoolHealthIndicator(
+      ConnectionFactory connectionFactory,
+      @Value("${app.r2dbc.pool.saturation-timeout:10s}") Duration saturationTimeout) {
+    return findPool(connectionFactory)
+        .<HealthIndicator>map(pool -> new ConnectionPoolHealthIndicator(pool, saturationTimeout))
+        .orElse(() -> Health.up().withDetail("pooled", false).build());
+  }
+
+  /** Looks for the connection pool behind the given, possibly wrapped, connection factory */
+  public static Optional<ConnectionPool> findPool(ConnectionFactory connectionFactory) {
+    Object candidate = connectionFactory;
+    while (candidate != null) {
+      if (candidate instanceof ConnectionPool) return Optional.of((ConnectionPool) candidate);
+      candidate = candidate instanceof Wrapped ? ((Wrapped<?>) candidate).unwrap() : null;
+    }
+    return Optional.empty();
+  }
+}
@@ -0,0 +1,49 @@
+package com.usermanagement.reactive.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import org.springframework.web.server.WebFilter;
+import reactor.core.publisher.Mono;
+
+/**
+ * Lets ReplicaRoutingConnectionFactory tell the read-only transactions from the others, and the
+ * requests of the WebFlux runtime read their own writes. The servlet runtime has no Reactor context
+ * per request to keep that in, there a read-only transaction following a write in the same request
+ * may not see it yet
+ */
+@Configuration
+public class ReplicaRoutingConfiguration {
+
+  // A transaction is only known to be read-only once its connection is acquired, so the flag is
+  // handed to the routing connection factory in the context of the acquisition
+  @Bean
+  public ReactiveTransactionManager transactionManager(ConnectionFactory connectionFactory) {
+    return new R2dbcTransactionManager(connectionFactory) {
+      @Override
+      protected Mono<Void> doBegin(
+          TransactionSynchronizationManager synchronizationManager,
+          Object transaction,
+          TransactionDefinition definition) {
+        return super.doBegin(synchronizationManager, transaction, definition)
+            .contextWrite(
+                context ->
+                    ReplicaRoutingConnectionFactory.readOnly(context, definition.isReadOnly()));
+      }
+    };
+  }
+
+  @Bean
+  @ConditionalOnProperty("app.r2dbc.replicas.urls")
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+  public WebFilter readYourWritesFilter() {
+    return (exchange, chain) ->
+        chain.filter(exchange).contextWrite(ReplicaRoutingConnectionFactory::readYourWrites);
+  }
+}
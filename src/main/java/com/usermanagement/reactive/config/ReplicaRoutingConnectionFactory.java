@@ -0,0 +1,113 @@
+package com.usermanagement.reactive.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Hands out the connections of read-only work from the replicas, in turn, and all the others from
+ * the primary. Work is read-only in a transaction declared with @Transactional(readOnly = true),
+ * whatever its propagation, or when it is marked with readOnly. Without a transaction it goes to
+ * the primary.
+ *
+ * <p>Within a readYourWrites scope, e.g. a request, reads stay on the primary once it was used, so
+ * that they see the writes made before them despite the replication lag. Disposing it disposes the
+ * primary and the replicas
+ */
+public class ReplicaRoutingConnectionFactory extends AbstractRoutingConnectionFactory
+    implements Wrapped<ConnectionFactory>, Disposable {
+  private static final String PRIMARY = "primary";
+  private static final String READ_ONLY =
+      ReplicaRoutingConnectionFactory.class.getName() + ".readOnly";
+  private static final String WROTE = ReplicaRoutingConnectionFactory.class.getName() + ".wrote";
+
+  private final ConnectionFactory primary;
+  private final List<ConnectionFactory> replicas;
+  private final AtomicInteger next = new AtomicInteger();
+
+  public ReplicaRoutingConnectionFactory(
+      ConnectionFactory primary, List<ConnectionFactory> replicas) {
+    this.primary = primary;
+    this.replicas = new ArrayList<>(replicas);
+    Map<Object, Object> targets = new HashMap<>();
+    targets.put(PRIMARY, primary);
+    for (int i = 0; i < replicas.size(); i++) targets.put(i, replicas.get(i));
+    setTargetConnectionFactories(targets);
+    setDefaultTargetConnectionFactory(primary);
+    afterPropertiesSet();
+  }
+
+  /** Marks the connections created within the given context as read-only or not */
+  public static Context readOnly(Context context, boolean readOnly) {
+    return context.put(READ_ONLY, readOnly);
+  }
+
+  /** Opens a scope in which reads see the writes made before them */
+  public static Context readYourWrites(Context context) {
+    return context.hasKey(WROTE) ? context : context.put(WROTE, new AtomicBoolean());
+  }
+
+  /** Whether the reads in the given context go to the primary, as writes were made before them */
+  public static boolean readsOwnWrites(ContextView context) {
+    AtomicBoolean wrote = context.getOrDefault(WROTE, null);
+    return wrote != null && wrote.get();
+  }
+
+  @Override
+  protected Mono<Object> determineCurrentLookupKey() {
+    return Mono.deferContextual(
+        context ->
+            isReadOnly(context)
+                .map(
+                    readOnly -> {
+                      if (readOnly && !readsOwnWrites(context))
+                        return Math.floorMod(next.getAndIncrement(), replicas.size());
+                      AtomicBoolean wrote = context.getOrDefault(WROTE, null);
+                      if (!readOnly && wrote != null) wrote.set(true);
+                      return PRIMARY;
+                    }));
+  }
+
+  // A transaction is being begun when the flag is in the context, its synchronization does not
+  // know yet whether it is read-only
+  private static Mono<Boolean> isReadOnly(ContextView context) {
+    if (context.hasKey(READ_ONLY)) return Mono.just(context.get(READ_ONLY));
+    return TransactionSynchronizationManager.forCurrentTransaction()
+        .map(TransactionSynchronizationManager::isCurrentTransactionReadOnly)
+        .onErrorResume(NoTransactionException.class, e -> Mono.just(false));
+  }
+
+  @Override
+  public ConnectionFactory unwrap() {
+    return primary;
+  }
+
+  @Override
+  public void dispose() {
+    dispose(primary);
+    replicas.forEach(ReplicaRoutingConnectionFactory::dispose);
+  }
+
+  private static void dispose(ConnectionFactory connectionFactory) {
+    if (connectionFactory instanceof Disposable) ((Disposable) connectionFactory).dispose();
+    else R2dbcPoolConfiguration.findPool(connectionFactory).ifPresent(ConnectionPool::dispose);
+  }
+
+  @Override
+  public boolean isDisposed() {
+    return primary instanceof Disposable && ((Disposable) primary).isDisposed();
+  }
+}
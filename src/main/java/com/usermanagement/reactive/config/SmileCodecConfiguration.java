@@ -0,0 +1,51 @@
+package com.usermanagement.reactive.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.util.MimeType;
+
+/**
+ * Smile (application/x-jackson-smile), the binary format of Jackson, is negotiated with Accept and
+ * Content-Type next to JSON. Its mappers are built like the JSON one of Spring Boot, so both
+ * formats carry the same properties. The codecs serve the WebFlux server and the WebClient of
+ * UserClient, the message converter the servlet server
+ */
+@Configuration
+public class SmileCodecConfiguration {
+  // The codecs built with a mapper default to the JSON types, so the Smile ones are named
+  private static final MimeType[] SMILE_MIME_TYPES = {
+    new MimeType("application", "x-jackson-smile"), new MimeType("application", "*+x-jackson-smile")
+  };
+
+  @Bean
+  public CodecCustomizer smileCodecCustomizer(Jackson2ObjectMapperBuilder builder) {
+    ObjectMapper smileMapper = smileMapper(builder);
+    return configurer -> {
+      configurer
+          .defaultCodecs()
+          .jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper, SMILE_MIME_TYPES));
+      configurer
+          .defaultCodecs()
+          .jackson2SmileEncoder(new Jackson2SmileEncoder(smileMapper, SMILE_MIME_TYPES));
+    };
+  }
+
+  @Bean
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(
+      Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2SmileHttpMessageConverter(smileMapper(builder));
+  }
+
+  private static ObjectMapper smileMapper(Jackson2ObjectMapperBuilder builder) {
+    return builder.createXmlMapper(false).factory(new SmileFactory()).build();
+  }
+}
@@ -0,0 +1,50 @@
+package com.usermanagement.reactive.config;
+
+import io.netty.channel.ChannelOption;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * WebClient used by UserClient, configured with app.client.*. It runs on its own sized connection
+ * pool, whose usage is exported as the reactor.netty.connection.provider.* metrics. The requests
+ * are timed as http.client.requests by the WebClient.Builder of Spring Boot
+ */
+@Configuration
+public class UserClientConfiguration {
+
+  @Bean(destroyMethod = "dispose")
+  public ConnectionProvider userClientConnectionProvider(
+      @Value("${app.client.max-connections:100}") int maxConnections,
+      @Value("${app.client.pending-acquire-timeout:5s}") Duration pendingAcquireTimeout,
+      @Value("${app.client.max-idle-time:30s}") Duration maxIdleTime) {
+    return ConnectionProvider.builder("user-client")
+        .maxConnections(maxConnections)
+        .pendingAcquireTimeout(pendingAcquireTimeout)
+        .maxIdleTime(maxIdleTime)
+        .metrics(true)
+        .build();
+  }
+
+  @Bean
+  public WebClient userWebClient(
+      WebClient.Builder builder,
+      ConnectionProvider userClientConnectionProvider,
+      @Value("${app.client.base-url:http://localhost:8080}") String baseUrl,
+      @Value("${app.client.connect-timeout:2s}") Duration connectTimeout,
+      @Value("${app.client.response-timeout:5s}") Duration responseTimeout) {
+    HttpClient httpClient =
+        HttpClient.create(userClientConnectionProvider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+            .responseTimeout(responseTimeout);
+    return builder
+        .baseUrl(baseUrl)
+        .clientConnector(new ReactorClientHttpConnector(httpClient))
+        .build();
+  }
+}
@@ -0,0 +1,65 @@
+package com.usermanagement.reactive.controller;
+
+import com.usermanagement.reactive.dto.UserBatchResultDTO;
+import com.usermanagement.reactive.service.UserService;
+import java.io.InputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * POST /v1/users/batch with newline delimited JSON (application/x-ndjson). The body is decoded line
+ * by line as it arrives, a malformed line is reported as a failed row like an invalid user. The
+ * JSON array variant is served by UserController
+ */
+public class UserBatchController {
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private UserBatchController() {}
+
+  @RestController
+  @RequestMapping("/v1/users")
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  public static class Servlet {
+    @Autowired private UserService userService;
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<UserBatchResultDTO> createBatchFromNdjson(InputStream body) {
+      return created(
+          userService.createUsersFromNdjson(
+              DataBufferUtils.readInputStream(
+                      () -> body, DefaultDataBufferFactory.sharedInstance, READ_BUFFER_SIZE)
+                  .subscribeOn(Schedulers.boundedElastic())));
+    }
+  }
+
+  @RestController
+  @RequestMapping("/v1/users")
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+  public static class Reactive {
+    @Autowired private UserService userService;
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<UserBatchResultDTO> createBatchFromNdjson(@RequestBody Flux<DataBuffer> body) {
+      return created(userService.createUsersFromNdjson(body));
+    }
+  }
+
+  private static Mono<UserBatchResultDTO> created(Mono<UserBatchResultDTO> result) {
+    return result.onErrorMap(
+        IllegalArgumentException.class,
+        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+  }
+}
@@ -1,19 +1,35 @@
 package com.usermanagement.reactive.controller;
 
+import com.usermanagement.reactive.changes.UserChangeFeed;
+import com.usermanagement.reactive.dto.UserBatchResultDTO;
+import com.usermanagement.reactive.dto.UserChangeEventDTO;
+import com.usermanagement.reactive.dto.UserCursorPageDTO;
 import com.usermanagement.reactive.dto.UserDepartmentDTO;
+import com.usermanagement.reactive.dto.UserFilterDTO;
+import com.usermanagement.reactive.dto.UserPatchDTO;
+import com.usermanagement.reactive.dto.UserStatsDTO;
+import com.usermanagement.reactive.metrics.RowsMetrics;
 import com.usermanagement.reactive.model.User;
 import com.usermanagement.reactive.service.UserService;
-import java.util.Arrays;
+import com.usermanagement.reactive.utilities.ETags;
+import com.usermanagement.reactive.utilities.SortParser;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import javax.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -29,51 +45,111 @@ import reactor.core.publisher.Mono;
 public class UserController {
   @Autowired private UserService userService;
 
+  @Autowired private RowsMetrics rowsMetrics;
+
+  @Autowired private UserChangeFeed userChangeFeed;
+
   @PostMapping
   @ResponseStatus(HttpStatus.CREATED)
   public Mono<User> create(@Valid @RequestBody User user) {
     return userService.createUser(user);
   }
 
-  // Get all users without pagination and sorting
+  // Bulk creation, every row is validated and reported separately. The newline delimited JSON
+  // variant is served by UserBatchController
+  @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public Mono<UserBatchResultDTO> createBatch(@RequestBody List<User> users) {
+    return userService
+        .createUsers(users)
+        .onErrorMap(
+            IllegalArgumentException.class,
+            e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+  }
+
+  // Get all users without pagination and sorting. The tag is computed before the users are read,
+  // so a write in between can only make the next request miss, never serve stale users
   @GetMapping
-  public Flux<User> getAllUsers() {
-    return userService.getAllUsers();
+  public Mono<ResponseEntity<Flux<User>>> getAllUsers(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    return userService
+        .getAllUsersETag()
+        .map(
+            etag ->
+                ETags.matches(ifNoneMatch, etag)
+                    ? ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build()
+                    : ResponseEntity.ok()
+                        .eTag(etag)
+                        .body(rowsMetrics.count("/v1/users", userService.getAllUsers())));
+  }
+
+  // Stream all users one by one as newline delimited JSON or server-sent events
+  @GetMapping(produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+  public Flux<User> streamAllUsers() {
+    return rowsMetrics.count("/v1/users", userService.streamAllUsers());
+  }
+
+  // Live changes of the users as server-sent events whose ids are the event sequences. A client
+  // resumes after the last sequence it saw with Last-Event-ID, as EventSource does, or with after
+  @GetMapping(value = "changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public Flux<ServerSentEvent<UserChangeEventDTO>> streamChangesAsEvents(
+      @RequestParam(required = false) Long after,
+      @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+    return userChangeFeed
+        .subscribe(after != null ? after : lastEventId)
+        .map(
+            event -> ServerSentEvent.builder(event).id(Long.toString(event.getSequence())).build());
+  }
+
+  // Live changes of the users as newline delimited JSON
+  @GetMapping(value = "changes", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<UserChangeEventDTO> streamChanges(@RequestParam(required = false) Long after) {
+    return userChangeFeed.subscribe(after);
   }
 
   // Get users with pagination and sorting
   @GetMapping("all")
-  public Mono<Page<User>> getAllUsersWithPaginationAndSorting(
+  public Mono<ResponseEntity<Page<User>>> getAllUsersWithPaginationAndSorting(
       @RequestParam(value = "page", defaultValue = "0") int page,
       @RequestParam(value = "size", defaultValue = "10") int size,
       @RequestParam(value = "sort", defaultValue = "id;ASC,name;DESC", required = false)
-          String[] sortBy) {
-
-    Sort allSorts =
-        Sort.by(
-            Arrays.stream(sortBy)
-                .map(sort -> sort.split(";", 2))
-                .map(
-                    array ->
-                        new Sort.Order(replaceOrderStringThroughDirection(array[1]), array[0])
-                            .ignoreCase())
-                .collect(Collectors.toList()));
+          String[] sortBy,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
-    return userService.getUsers(PageRequest.of(page, size, allSorts));
+    return userService
+        .getUsers(PageRequest.of(page, size, SortParser.parse(sortBy, true)))
+        .doOnNext(users -> rowsMetrics.record("/v1/users/all", users.getNumberOfElements()))
+        .map(
+            users ->
+                notModifiedOr(
+                    ifNoneMatch,
+                    ETags.of(users.getContent(), users.getPageable(), users.getTotalElements()),
+                    users));
   }
 
-  private Sort.Direction replaceOrderStringThroughDirection(String sortDirection) {
-    if (sortDirection.equalsIgnoreCase("DESC")) {
-      return Sort.Direction.DESC;
-    } else {
-      return Sort.Direction.ASC;
-    }
+  // Get users with keyset pagination, the next page is fetched with the cursor of the previous one
+  @GetMapping("page")
+  public Mono<UserCursorPageDTO> getUsersWithKeysetPagination(
+      @RequestParam(value = "after", required = false) String after,
+      @RequestParam(value = "size", defaultValue = "10") int size,
+      @RequestParam(value = "sort", defaultValue = "id;ASC") String sortBy,
+      @RequestParam(value = "count", defaultValue = "false") boolean count) {
+    String[] sort = sortBy.split(";", 2);
+    Sort.Direction direction = SortParser.toDirection(sort.length > 1 ? sort[1] : "ASC");
+    return userService
+        .getUsersAfter(sort[0], direction, after, size, count)
+        .doOnNext(users -> rowsMetrics.record("/v1/users/page", users.getContent().size()))
+        .onErrorMap(
+            IllegalArgumentException.class,
+            e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
   }
 
   @GetMapping("/{userId}")
-  public Mono<ResponseEntity<User>> getUserById(@PathVariable Integer userId) {
+  public Mono<ResponseEntity<User>> getUserById(
+      @PathVariable Integer userId,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
     Mono<User> user = userService.findById(userId);
-    return user.map(u -> ResponseEntity.ok(u)).defaultIfEmpty(ResponseEntity.notFound().build());
+    return user.map(u -> notModifiedOr(ifNoneMatch, ETags.of(u), u))
+        .defaultIfEmpty(ResponseEntity.notFound().build());
   }
 
   @PutMapping("/{userId}")
@@ -82,7 +158,26 @@ public class UserController {
     return userService
         .updateUser(userId, user)
         .map(updatedUser -> ResponseEntity.ok(updatedUser))
-        .defaultIfEmpty(ResponseEntity.badRequest().build());
+        .defaultIfEmpty(ResponseEntity.badRequest().build())
+        .onErrorMap(
+            OptimisticLockingFailureException.class,
+            e -> new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e));
+  }
+
+  // Updates the given fields only, e.g. {"salary": 12000, "version": 3}
+  @PatchMapping("/{userId}")
+  public Mono<ResponseEntity<User>> patchUserById(
+      @PathVariable Integer userId, @Valid @RequestBody UserPatchDTO patch) {
+    return userService
+        .patchUser(userId, patch)
+        .map(ResponseEntity::ok)
+        .defaultIfEmpty(ResponseEntity.notFound().build())
+        .onErrorMap(
+            IllegalArgumentException.class,
+            e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e))
+        .onErrorMap(
+            OptimisticLockingFailureException.class,
+            e -> new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e));
   }
 
   @DeleteMapping("/{userId}")
@@ -95,12 +190,45 @@ public class UserController {
 
   @GetMapping("/age/{age}")
   public Flux<User> getUsersByAgeGreater(@PathVariable int age) {
-    return userService.findUsersByAge(age);
+    return rowsMetrics.count("/v1/users/age/{age}", userService.findUsersByAge(age));
+  }
+
+  // Filter users by age and salary ranges, name and email prefixes and ids, e.g.
+  // /v1/users/query?minAge=30&maxSalary=10000&namePrefix=Jo&sort=age;DESC&limit=20
+  @GetMapping("query")
+  public Flux<User> queryUsers(UserFilterDTO filter) {
+    return rowsMetrics
+        .count("/v1/users/query", userService.findUsers(filter))
+        .onErrorMap(
+            IllegalArgumentException.class,
+            e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+  }
+
+  // Headcount by age and salary statistics, estimated in memory unless exact=true
+  @GetMapping("stats")
+  public Mono<UserStatsDTO> getStats(
+      @RequestParam(value = "exact", defaultValue = "false") boolean exact) {
+    return userService.getStats(exact);
   }
 
+  // Ids that do not belong to any user are reported in the X-Missing-Ids header
   @PostMapping("/search/id")
-  public Flux<User> fetchUsersByIds(@RequestBody List<Integer> ids) {
-    return userService.fetchUsers(ids);
+  public Mono<ResponseEntity<List<User>>> fetchUsersByIds(@RequestBody List<Integer> ids) {
+    return rowsMetrics
+        .count("/v1/users/search/id", userService.fetchUsers(ids))
+        .collectList()
+        .map(
+            users -> {
+              Set<Integer> missingIds = new LinkedHashSet<>(ids);
+              missingIds.remove(null);
+              users.forEach(u -> missingIds.remove(u.getId()));
+              ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+              if (!missingIds.isEmpty())
+                response.header(
+                    "X-Missing-Ids",
+                    missingIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+              return response.body(users);
+            });
   }
 
   @GetMapping("/{userId}/department")
@@ -108,10 +236,27 @@ public class UserController {
     return userService.fetchUserAndDepartment(userId);
   }
 
+  @PostMapping("/departments")
+  public Flux<UserDepartmentDTO> fetchUsersAndDepartments(@RequestBody List<Integer> ids) {
+    return rowsMetrics.count("/v1/users/departments", userService.fetchUsersAndDepartments(ids));
+  }
+
   @GetMapping("search")
   public Flux<User> searchUsersByEmailOrName(
       @RequestParam(value = "email", defaultValue = "") String email,
-      @RequestParam(value = "name", defaultValue = "") String name) {
-    return userService.findUsersByEmailOrName(email, name);
+      @RequestParam(value = "name", defaultValue = "") String name,
+      @RequestParam(value = "limit", defaultValue = "50") int limit) {
+    return rowsMetrics
+        .count("/v1/users/search", userService.findUsersByEmailOrName(email, name, limit))
+        .onErrorMap(
+            IllegalArgumentException.class,
+            e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+  }
+
+  // Unchanged resources are answered with 304 and no body, so they are not serialized
+  private static <T> ResponseEntity<T> notModifiedOr(String ifNoneMatch, String etag, T body) {
+    if (ETags.matches(ifNoneMatch, etag))
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).<T>build();
+    return ResponseEntity.ok().eTag(etag).body(body);
   }
 }
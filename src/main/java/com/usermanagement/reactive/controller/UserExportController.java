@@ -0,0 +1,73 @@
+package com.usermanagement.reactive.controller;
+
+import com.usermanagement.reactive.repository.UserExportRepository;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+
+/**
+ * GET /v1/users/export.csv downloads every user as CSV, see UserExportRepository. The rows are
+ * written into pooled buffers and sent chunk by chunk while they are read from the database. The
+ * response is gzipped when the client accepts it, by the server compression of text/csv.
+ *
+ * <p>Reactor Netty writes the buffers of the response allocator as they are, the servlet stack
+ * copies them into the response OutputStream on its async thread
+ */
+public class UserExportController {
+  private static final String CSV = "text/csv";
+  private static final String CONTENT_DISPOSITION =
+      ContentDisposition.attachment().filename("users.csv").build().toString();
+
+  private UserExportController() {}
+
+  @RestController
+  @RequestMapping("/v1/users")
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  public static class Servlet {
+    private static final DataBufferFactory BUFFER_FACTORY =
+        new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    @Autowired private UserExportRepository userExportRepository;
+
+    @GetMapping(value = "/export.csv", produces = CSV)
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+      StreamingResponseBody body =
+          out ->
+              DataBufferUtils.write(userExportRepository.exportCsv(BUFFER_FACTORY), out)
+                  .doOnNext(DataBufferUtils::release)
+                  .blockLast();
+      // The content type is not derived from produces for a StreamingResponseBody
+      return ResponseEntity.ok()
+          .contentType(MediaType.valueOf(CSV))
+          .header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION)
+          .body(body);
+    }
+  }
+
+  @RestController
+  @RequestMapping("/v1/users")
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+  public static class Reactive {
+    @Autowired private UserExportRepository userExportRepository;
+
+    @GetMapping(value = "/export.csv", produces = CSV)
+    public Flux<DataBuffer> exportUsers(ServerHttpResponse response) {
+      response.getHeaders().set(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION);
+      return userExportRepository.exportCsv(response.bufferFactory());
+    }
+  }
+}
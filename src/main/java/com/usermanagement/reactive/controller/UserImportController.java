@@ -0,0 +1,103 @@
+package com.usermanagement.reactive.controller;
+
+import com.usermanagement.reactive.dto.UserImportResultDTO;
+import com.usermanagement.reactive.service.UserImportService;
+import com.usermanagement.reactive.service.UserImportService.Format;
+import java.io.InputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * POST /v1/users/import uploads users as CSV (text/csv) or newline delimited JSON
+ * (application/x-ndjson), see UserImportService. The response is the summary of the import, or its
+ * progress after every batch as newline delimited JSON when the client accepts it.
+ *
+ * <p>The body is streamed on both runtimes: Reactor Netty hands it over as it arrives, the servlet
+ * stack as an InputStream which is read on the boundedElastic scheduler
+ */
+public class UserImportController {
+  private static final String CSV = "text/csv";
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private UserImportController() {}
+
+  @RestController
+  @RequestMapping("/v1/users/import")
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  public static class Servlet {
+    @Autowired private UserImportService userImportService;
+
+    @PostMapping(
+        consumes = {CSV, MediaType.APPLICATION_NDJSON_VALUE},
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<UserImportResultDTO> importUsers(
+        @RequestHeader("Content-Type") MediaType contentType, InputStream body) {
+      return summary(userImportService.importUsers(read(body), format(contentType)));
+    }
+
+    @PostMapping(
+        consumes = {CSV, MediaType.APPLICATION_NDJSON_VALUE},
+        produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<UserImportResultDTO> importUsersWithProgress(
+        @RequestHeader("Content-Type") MediaType contentType, InputStream body) {
+      return progress(userImportService.importUsers(read(body), format(contentType)));
+    }
+
+    private static Flux<DataBuffer> read(InputStream body) {
+      return DataBufferUtils.readInputStream(
+              () -> body, DefaultDataBufferFactory.sharedInstance, READ_BUFFER_SIZE)
+          .subscribeOn(Schedulers.boundedElastic());
+    }
+  }
+
+  @RestController
+  @RequestMapping("/v1/users/import")
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+  public static class Reactive {
+    @Autowired private UserImportService userImportService;
+
+    @PostMapping(
+        consumes = {CSV, MediaType.APPLICATION_NDJSON_VALUE},
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<UserImportResultDTO> importUsers(
+        @RequestHeader("Content-Type") MediaType contentType, @RequestBody Flux<DataBuffer> body) {
+      return summary(userImportService.importUsers(body, format(contentType)));
+    }
+
+    @PostMapping(
+        consumes = {CSV, MediaType.APPLICATION_NDJSON_VALUE},
+        produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<UserImportResultDTO> importUsersWithProgress(
+        @RequestHeader("Content-Type") MediaType contentType, @RequestBody Flux<DataBuffer> body) {
+      return progress(userImportService.importUsers(body, format(contentType)));
+    }
+  }
+
+  private static Format format(MediaType contentType) {
+    return contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON) ? Format.NDJSON : Format.CSV;
+  }
+
+  private static Mono<UserImportResultDTO> summary(Flux<UserImportResultDTO> progress) {
+    return progress(progress).last();
+  }
+
+  private static Flux<UserImportResultDTO> progress(Flux<UserImportResultDTO> progress) {
+    return progress.onErrorMap(
+        IllegalArgumentException.class,
+        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+  }
+}
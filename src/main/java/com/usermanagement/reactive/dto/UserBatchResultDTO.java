@@ -0,0 +1,27 @@
+package com.usermanagement.reactive.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Outcome of a bulk user creation. Rows are reported in the same order they were sent */
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class UserBatchResultDTO {
+  private int created;
+  private int failed;
+  private List<Row> rows;
+
+  @Data
+  @AllArgsConstructor
+  @NoArgsConstructor
+  public static class Row {
+    private int index;
+    private Integer id;
+    private String error;
+  }
+}
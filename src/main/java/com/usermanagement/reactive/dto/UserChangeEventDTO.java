@@ -0,0 +1,27 @@
+package com.usermanagement.reactive.dto;
+
+import com.usermanagement.reactive.model.User;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A change of the users, sent by GET /v1/users/changes. The user is the created or updated one, or
+ * the deleted one as it was. RESYNC carries no user: the users should be read again
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserChangeEventDTO {
+  private long sequence;
+  private Type type;
+  private Integer userId;
+  private User user;
+
+  public enum Type {
+    CREATED,
+    UPDATED,
+    DELETED,
+    RESYNC
+  }
+}
@@ -0,0 +1,22 @@
+package com.usermanagement.reactive.dto;
+
+import com.usermanagement.reactive.model.User;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A page of users fetched with keyset pagination. next is the cursor of the following page and is
+ * null on the last page, totalElements is only filled when it was requested
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class UserCursorPageDTO {
+  private List<User> content;
+  private String next;
+  private Long totalElements;
+}
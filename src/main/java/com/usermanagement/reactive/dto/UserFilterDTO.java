@@ -0,0 +1,27 @@
+package com.usermanagement.reactive.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Filters of GET /v1/users/query. Every filter is optional and the given ones are combined with
+ * AND. Ranges are inclusive and prefixes are case sensitive so that they can be served by an index
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class UserFilterDTO {
+  private Integer minAge;
+  private Integer maxAge;
+  private Double minSalary;
+  private Double maxSalary;
+  private String namePrefix;
+  private String emailPrefix;
+  private List<Integer> ids;
+  private String[] sort;
+  private Integer limit;
+}
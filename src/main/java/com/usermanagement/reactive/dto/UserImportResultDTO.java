@@ -0,0 +1,31 @@
+package com.usermanagement.reactive.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a user import, sent after every written batch and once more when it is done. Counts
+ * are cumulative, rows are the rejected ones identified by their line in the file
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class UserImportResultDTO {
+  private long rows;
+  private long imported;
+  private long failed;
+  private boolean done;
+  private List<Row> errors;
+
+  @Data
+  @AllArgsConstructor
+  @NoArgsConstructor
+  public static class Row {
+    private long line;
+    private String error;
+  }
+}
@@ -0,0 +1,36 @@
+package com.usermanagement.reactive.dto;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Body of PATCH /v1/users/{id}. Only the given fields are updated, with the same constraints as in
+ * User. When the version is given, the user is only updated if it is still at that version
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class UserPatchDTO {
+
+  @Pattern(regexp = ".*\\S.*", message = "Name is mandatory")
+  private String name;
+
+  @Min(value = 1, message = "Age should not be less than 1")
+  @Max(value = 150, message = "Age should not be greater than 150")
+  private Integer age;
+
+  private Double salary;
+
+  @Pattern(regexp = ".*\\S.*", message = "Email is mandatory")
+  @Email(message = "Email should be valid")
+  private String email;
+
+  private Long version;
+}
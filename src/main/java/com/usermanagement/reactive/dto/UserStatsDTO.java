@@ -0,0 +1,26 @@
+package com.usermanagement.reactive.dto;
+
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregates over all users. When exact is false, the salary min, max and percentiles are estimated
+ * within the relative accuracy of the in-memory quantile sketch
+ */
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class UserStatsDTO {
+  private boolean exact;
+  private long count;
+  private Double averageAge;
+  private Map<String, Long> ageHistogram;
+  private Double minSalary;
+  private Double maxSalary;
+  private Double averageSalary;
+  private Map<String, Double> salaryPercentiles;
+}
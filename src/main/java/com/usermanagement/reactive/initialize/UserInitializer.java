@@ -52,25 +52,28 @@ public class UserInitializer implements CommandLineRunner {
         new Department(null, "Marketing", 2, "Cleveland"));
   }
 
+  // The setup is awaited, so that components built once the application is ready see the data
   private void initialDataSetup() {
     userRepository
         .deleteAll()
         .thenMany(Flux.fromIterable(getData()))
         .flatMap(userRepository::save)
         .thenMany(userRepository.findAll())
-        .subscribe(
+        .doOnNext(
             user -> {
               log.info("User Inserted from CommandLineRunner " + user);
-            });
+            })
+        .blockLast();
 
     departmentRepository
         .deleteAll()
         .thenMany(Flux.fromIterable(getDepartments()))
         .flatMap(departmentRepository::save)
         .thenMany(departmentRepository.findAll())
-        .subscribe(
+        .doOnNext(
             user -> {
               log.info("Department Inserted from CommandLineRunner " + user);
-            });
+            })
+        .blockLast();
   }
 }
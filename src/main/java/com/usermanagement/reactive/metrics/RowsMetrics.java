@@ -0,0 +1,43 @@
+package com.usermanagement.reactive.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+/**
+ * Records how many rows a request returned, as the http.server.rows distribution summary tagged
+ * with the same uri as http.server.requests. Cancelled and failed requests are not recorded
+ */
+@Component
+public class RowsMetrics {
+  private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  public <T> Flux<T> count(String uri, Flux<T> rows) {
+    return Flux.defer(
+        () -> {
+          AtomicLong count = new AtomicLong();
+          return rows.doOnNext(row -> count.incrementAndGet())
+              .doOnComplete(() -> record(uri, count.get()));
+        });
+  }
+
+  public void record(String uri, long rows) {
+    summaries
+        .computeIfAbsent(
+            uri,
+            u ->
+                DistributionSummary.builder("http.server.rows")
+                    .description("Rows returned by a request")
+                    .baseUnit("rows")
+                    .tag("uri", u)
+                    .register(meterRegistry))
+        .record(rows);
+  }
+}
@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.relational.core.mapping.Table;
 
 /**
@@ -38,4 +39,13 @@ public class User {
   @NotNull(message = "Email cannot be null")
   @Email(message = "Email should be valid")
   private String email;
+
+  // Incremented by every update. When an update carries it, it only applies to that version
+  @Version
+  @ApiModelProperty(notes = "Version the update applies to, the user is updated anyway when absent")
+  private Long version;
+
+  public User(Integer id, String name, int age, double salary, String email) {
+    this(id, name, age, salary, email, null);
+  }
 }
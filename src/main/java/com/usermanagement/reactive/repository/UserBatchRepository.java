@@ -0,0 +1,93 @@
+package com.usermanagement.reactive.repository;
+
+import com.usermanagement.reactive.model.User;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Repository for writing many users at once. Rows of a chunk are bound to a single INSERT statement
+ * through R2DBC Statement.add() so the whole chunk is sent to the database in one round trip. The
+ * generated ids are returned in the same order as the given users. Upserts work the same way, a
+ * user whose email exists already is updated and its version incremented, and the written rows are
+ * returned
+ */
+@Repository
+public class UserBatchRepository {
+  private static final String INSERT_USER =
+      "INSERT INTO users (name, age, salary, email) VALUES ($1, $2, $3, $4)";
+  private static final String UPSERT_USER_POSTGRES =
+      INSERT_USER
+          + " ON CONFLICT (email) DO UPDATE SET name = EXCLUDED.name, age = EXCLUDED.age,"
+          + " salary = EXCLUDED.salary, version = users.version + 1";
+  private static final String UPSERT_USER_H2 =
+      "MERGE INTO users u USING (SELECT CAST($1 AS VARCHAR(100)) AS name, CAST($2 AS INTEGER) AS age,"
+          + " CAST($3 AS DECIMAL) AS salary, CAST($4 AS VARCHAR(150)) AS email) s"
+          + " ON u.email = s.email"
+          + " WHEN MATCHED THEN UPDATE SET name = s.name, age = s.age, salary = s.salary,"
+          + " version = u.version + 1"
+          + " WHEN NOT MATCHED THEN INSERT (name, age, salary, email)"
+          + " VALUES (s.name, s.age, s.salary, s.email)";
+
+  @Autowired private DatabaseClient databaseClient;
+
+  @Autowired private ConnectionFactory connectionFactory;
+
+  @Autowired private R2dbcEntityTemplate template;
+
+  public Flux<Integer> insertAll(List<User> users) {
+    return databaseClient.inConnectionMany(
+        connection -> {
+          Statement statement = bindAll(connection.createStatement(INSERT_USER), users);
+          return Flux.from(statement.returnGeneratedValues("id").execute())
+              .concatMap(result -> result.map((row, metadata) -> row.get(0, Integer.class)));
+        });
+  }
+
+  /**
+   * Inserts the users, or updates the ones whose email exists already. The emails have to be
+   * distinct, PostgreSQL cannot update a row twice in one statement
+   *
+   * @return the rows written, as they are once written. Within a transaction they are read back
+   *     while still locked by it
+   */
+  public Flux<User> upsertAll(List<User> users) {
+    String sql =
+        connectionFactory.getMetadata().getName().equalsIgnoreCase("PostgreSQL")
+            ? UPSERT_USER_POSTGRES
+            : UPSERT_USER_H2;
+    List<String> emails = users.stream().map(User::getEmail).collect(Collectors.toList());
+    return databaseClient
+        .inConnection(
+            connection ->
+                Flux.from(bindAll(connection.createStatement(sql), users).execute())
+                    .concatMap(Result::getRowsUpdated)
+                    .then())
+        .thenMany(
+            databaseClient
+                .sql("SELECT * FROM users WHERE email IN (:emails)")
+                .bind("emails", emails)
+                .map((row, metadata) -> template.getConverter().read(User.class, row, metadata))
+                .all());
+  }
+
+  private static Statement bindAll(Statement statement, List<User> users) {
+    for (int i = 0; i < users.size(); i++) {
+      if (i > 0) statement.add();
+      User user = users.get(i);
+      statement
+          .bind(0, user.getName())
+          .bind(1, user.getAge())
+          .bind(2, user.getSalary())
+          .bind(3, user.getEmail());
+    }
+    return statement;
+  }
+}
@@ -0,0 +1,63 @@
+package com.usermanagement.reactive.repository;
+
+import com.usermanagement.reactive.dto.UserFilterDTO;
+import com.usermanagement.reactive.model.User;
+import com.usermanagement.reactive.utilities.SortParser;
+import java.util.Arrays;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Compiles the filters of a UserFilterDTO into a single parameterized SELECT on the users table, so
+ * that filtering, sorting and limiting all happen in the database
+ */
+@Repository
+public class UserCriteriaRepository {
+  private static final List<String> SORTABLE =
+      Arrays.asList("id", "name", "email", "age", "salary");
+
+  @Autowired private R2dbcEntityTemplate template;
+
+  public Flux<User> findAll(UserFilterDTO filter, int limit) {
+    Sort sort =
+        filter.getSort() == null ? Sort.by("id") : SortParser.parse(filter.getSort(), false);
+    for (Sort.Order order : sort)
+      if (!SORTABLE.contains(order.getProperty()))
+        return Flux.error(
+            new IllegalArgumentException("Users cannot be sorted by " + order.getProperty()));
+
+    return template
+        .select(User.class)
+        .matching(Query.query(toCriteria(filter)).sort(sort).limit(limit))
+        .all();
+  }
+
+  private Criteria toCriteria(UserFilterDTO filter) {
+    Criteria criteria = Criteria.empty();
+    if (filter.getMinAge() != null)
+      criteria = criteria.and("age").greaterThanOrEquals(filter.getMinAge());
+    if (filter.getMaxAge() != null)
+      criteria = criteria.and("age").lessThanOrEquals(filter.getMaxAge());
+    if (filter.getMinSalary() != null)
+      criteria = criteria.and("salary").greaterThanOrEquals(filter.getMinSalary());
+    if (filter.getMaxSalary() != null)
+      criteria = criteria.and("salary").lessThanOrEquals(filter.getMaxSalary());
+    if (filter.getNamePrefix() != null && !filter.getNamePrefix().isEmpty())
+      criteria = criteria.and("name").like(escapeLike(filter.getNamePrefix()) + "%");
+    if (filter.getEmailPrefix() != null && !filter.getEmailPrefix().isEmpty())
+      criteria = criteria.and("email").like(escapeLike(filter.getEmailPrefix()) + "%");
+    if (filter.getIds() != null && !filter.getIds().isEmpty())
+      criteria = criteria.and("id").in(filter.getIds());
+    return criteria;
+  }
+
+  private static String escapeLike(String text) {
+    return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+  }
+}
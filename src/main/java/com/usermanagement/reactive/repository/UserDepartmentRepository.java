@@ -0,0 +1,53 @@
+package com.usermanagement.reactive.repository;
+
+import com.usermanagement.reactive.dto.UserDepartmentDTO;
+import io.r2dbc.spi.Row;
+import java.util.Collection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Reads users together with their departments with a single users LEFT JOIN department query. Users
+ * without a department are returned with empty department fields
+ */
+@Repository
+public class UserDepartmentRepository {
+  private static final String SELECT_USER_DEPARTMENTS =
+      "SELECT u.id AS user_id, u.name AS user_name, u.age, u.salary, d.id AS department_id,"
+          + " d.name AS department_name, d.loc"
+          + " FROM users u LEFT JOIN department d ON d.user_id = u.id";
+
+  @Autowired private DatabaseClient databaseClient;
+
+  public Flux<UserDepartmentDTO> findByUserId(Integer userId) {
+    return databaseClient
+        .sql(SELECT_USER_DEPARTMENTS + " WHERE u.id = :userId ORDER BY d.id")
+        .bind("userId", userId)
+        .map(this::toUserDepartmentDTO)
+        .all();
+  }
+
+  public Flux<UserDepartmentDTO> findByUserIds(Collection<Integer> userIds) {
+    return databaseClient
+        .sql(SELECT_USER_DEPARTMENTS + " WHERE u.id IN (:userIds) ORDER BY u.id, d.id")
+        .bind("userIds", userIds)
+        .map(this::toUserDepartmentDTO)
+        .all();
+  }
+
+  private UserDepartmentDTO toUserDepartmentDTO(Row row) {
+    Number age = row.get("age", Number.class);
+    Number salary = row.get("salary", Number.class);
+    return UserDepartmentDTO.builder()
+        .userId(row.get("user_id", Integer.class))
+        .userName(row.get("user_name", String.class))
+        .age(age == null ? 0 : age.intValue())
+        .salary(salary == null ? 0 : salary.doubleValue())
+        .departmentId(row.get("department_id", Integer.class))
+        .departmentName(row.get("department_name", String.class))
+        .loc(row.get("loc", String.class))
+        .build();
+  }
+}
@@ -0,0 +1,151 @@
+package com.usermanagement.reactive.repository;
+
+import io.r2dbc.spi.Row;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Streams the users table as CSV. Every row is encoded as UTF-8 straight from the R2DBC row into
+ * the current chunk, without a User object or a line String, and a chunk is emitted once it holds
+ * app.users.export.chunk-size bytes. Rows are fetched app.users.export.fetch-size at a time, as
+ * fast as the chunks are written out, so memory stays flat for any table size
+ */
+@Repository
+public class UserExportRepository {
+  private static final byte[] HEADER =
+      "id,name,age,salary,email,version\n".getBytes(StandardCharsets.UTF_8);
+
+  // Emitted for the rows which do not fill the chunk up, and filtered out
+  private static final DataBuffer NOTHING =
+      DefaultDataBufferFactory.sharedInstance.allocateBuffer(0);
+
+  @Autowired private DatabaseClient databaseClient;
+
+  @Value("${app.users.export.fetch-size:1000}")
+  private int fetchSize;
+
+  @Value("${app.users.export.chunk-size:64KB}")
+  private DataSize chunkSize;
+
+  public Flux<DataBuffer> exportCsv(DataBufferFactory bufferFactory) {
+    return Flux.defer(
+        () -> {
+          Chunks chunks = new Chunks(bufferFactory, (int) chunkSize.toBytes());
+          chunks.current.write(HEADER);
+          return databaseClient
+              .sql("SELECT id, name, age, salary, email, version FROM users ORDER BY id")
+              .filter(statement -> statement.fetchSize(fetchSize))
+              .map(chunks::write)
+              .all()
+              .filter(chunk -> chunk != NOTHING)
+              .concatWith(Mono.fromSupplier(chunks::last))
+              .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+              .doOnCancel(chunks::release)
+              .doOnError(e -> chunks.release());
+        });
+  }
+
+  // Rows are written by one thread at a time, but a cancellation may come from another one
+  private static final class Chunks {
+    private final DataBufferFactory bufferFactory;
+    private final int size;
+    private DataBuffer current;
+
+    Chunks(DataBufferFactory bufferFactory, int size) {
+      this.bufferFactory = bufferFactory;
+      this.size = size;
+      this.current = bufferFactory.allocateBuffer(size);
+    }
+
+    synchronized DataBuffer write(Row row) {
+      if (current == null) return NOTHING;
+      writeNumber(current, row.get("id", Integer.class));
+      current.write((byte) ',');
+      writeText(current, row.get("name", String.class));
+      current.write((byte) ',');
+      writeNumber(current, row.get("age", Integer.class));
+      current.write((byte) ',');
+      BigDecimal salary = row.get("salary", BigDecimal.class);
+      if (salary != null) writeText(current, salary.toPlainString());
+      current.write((byte) ',');
+      writeText(current, row.get("email", String.class));
+      current.write((byte) ',');
+      writeNumber(current, row.get("version", Long.class));
+      current.write((byte) '\n');
+      if (current.readableByteCount() < size) return NOTHING;
+      DataBuffer full = current;
+      current = bufferFactory.allocateBuffer(size);
+      return full;
+    }
+
+    synchronized DataBuffer last() {
+      DataBuffer last = current;
+      current = null;
+      return last;
+    }
+
+    synchronized void release() {
+      if (current != null) DataBufferUtils.release(current);
+      current = null;
+    }
+  }
+
+  private static void writeNumber(DataBuffer buffer, Number number) {
+    if (number == null) return;
+    long value = number.longValue();
+    if (value < 0) {
+      buffer.write((byte) '-');
+      value = -value;
+    }
+    long divisor = 1;
+    while (value / divisor >= 10) divisor *= 10;
+    for (; divisor > 0; divisor /= 10) buffer.write((byte) ('0' + value / divisor % 10));
+  }
+
+  // Fields with a comma, a quote or a line break are quoted, quotes are doubled
+  private static void writeText(DataBuffer buffer, String text) {
+    if (text == null) return;
+    boolean quoted = false;
+    for (int i = 0; i < text.length() && !quoted; i++) {
+      char c = text.charAt(i);
+      quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (quoted) buffer.write((byte) '"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        if (c == '"') buffer.write((byte) '"');
+        buffer.write((byte) c);
+      } else if (c < 0x800) {
+        buffer.write((byte) (0xC0 | c >> 6));
+        buffer.write((byte) (0x80 | c & 0x3F));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < text.length()
+          && Character.isLowSurrogate(text.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, text.charAt(++i));
+        buffer.write((byte) (0xF0 | codePoint >> 18));
+        buffer.write((byte) (0x80 | codePoint >> 12 & 0x3F));
+        buffer.write((byte) (0x80 | codePoint >> 6 & 0x3F));
+        buffer.write((byte) (0x80 | codePoint & 0x3F));
+      } else {
+        // A lone surrogate cannot be encoded
+        if (Character.isSurrogate(c)) c = '?';
+        buffer.write((byte) (0xE0 | c >> 12));
+        buffer.write((byte) (0x80 | c >> 6 & 0x3F));
+        buffer.write((byte) (0x80 | c & 0x3F));
+      }
+    }
+    if (quoted) buffer.write((byte) '"');
+  }
+}
@@ -0,0 +1,53 @@
+package com.usermanagement.reactive.repository;
+
+import static org.springframework.data.relational.core.query.Criteria.where;
+
+import com.usermanagement.reactive.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Keyset (seek) pagination for the users table. A page starts right after the last seen sort key
+ * and id, so the database can seek on an index instead of reading and skipping an offset
+ */
+@Repository
+public class UserKeysetRepository {
+
+  @Autowired private R2dbcEntityTemplate template;
+
+  /**
+   * @param lastValue sort key of the last user of the previous page, null for the first page
+   * @param lastId id of the last user of the previous page, null for the first page
+   */
+  public Flux<User> findPage(
+      String property, Sort.Direction direction, Object lastValue, Integer lastId, int limit) {
+    Sort sort = Sort.by(direction, property);
+    if (!property.equals("id")) sort = sort.and(Sort.by(direction, "id"));
+    return template
+        .select(User.class)
+        .matching(
+            Query.query(after(property, direction, lastValue, lastId)).sort(sort).limit(limit))
+        .all();
+  }
+
+  private Criteria after(
+      String property, Sort.Direction direction, Object lastValue, Integer lastId) {
+    if (lastId == null) return Criteria.empty();
+    if (property.equals("id"))
+      return direction.isAscending()
+          ? where("id").greaterThan(lastId)
+          : where("id").lessThan(lastId);
+    return direction.isAscending()
+        ? where(property)
+            .greaterThan(lastValue)
+            .or(where(property).is(lastValue).and("id").greaterThan(lastId))
+        : where(property)
+            .lessThan(lastValue)
+            .or(where(property).is(lastValue).and("id").lessThan(lastId));
+  }
+}
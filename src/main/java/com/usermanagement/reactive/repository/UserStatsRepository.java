@@ -0,0 +1,92 @@
+package com.usermanagement.reactive.repository;
+
+import com.usermanagement.reactive.dto.UserStatsDTO;
+import com.usermanagement.reactive.stats.UserStatistics;
+import io.r2dbc.spi.Row;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Computes the user statistics exactly with SQL aggregates, see UserStatistics for the estimates
+ */
+@Repository
+public class UserStatsRepository {
+  private static final String SELECT_AGGREGATES =
+      "SELECT COUNT(*) AS n, AVG(CAST(age AS DOUBLE PRECISION)) AS average_age,"
+          + " MIN(salary) AS min_salary, MAX(salary) AS max_salary,"
+          + " AVG(CAST(salary AS DOUBLE PRECISION)) AS average_salary";
+  private static final String SELECT_AGE_HISTOGRAM =
+      "SELECT age / 10 AS decade, COUNT(*) AS n FROM users GROUP BY age / 10 ORDER BY decade";
+
+  @Autowired private DatabaseClient databaseClient;
+
+  /**
+   * Aggregates which change whenever a user is created, updated or deleted: the number of users and
+   * the sums of their ids and versions. The users themselves are not read
+   */
+  public Mono<String> fingerprint() {
+    return databaseClient
+        .sql(
+            "SELECT COUNT(*) AS n, COALESCE(SUM(id), 0) AS ids, COALESCE(SUM(version), 0) AS versions"
+                + " FROM users")
+        .map(row -> row.get("n") + "-" + row.get("ids") + "-" + row.get("versions"))
+        .one();
+  }
+
+  public Mono<UserStatsDTO> aggregate() {
+    StringBuilder sql = new StringBuilder(SELECT_AGGREGATES);
+    for (int i = 0; i < UserStatistics.PERCENTILES.length; i++)
+      sql.append(", PERCENTILE_CONT(")
+          .append(UserStatistics.PERCENTILES[i])
+          .append(") WITHIN GROUP (ORDER BY salary) AS p")
+          .append(i);
+    sql.append(" FROM users");
+
+    Mono<UserStatsDTO> aggregates = databaseClient.sql(sql.toString()).map(this::toStats).one();
+    Mono<Map<String, Long>> histogram =
+        databaseClient
+            .sql(SELECT_AGE_HISTOGRAM)
+            .map(
+                row ->
+                    new Object[] {
+                      row.get("decade", Number.class).intValue(),
+                      row.get("n", Number.class).longValue()
+                    })
+            .all()
+            .collect(
+                LinkedHashMap::new,
+                (map, bucket) ->
+                    map.put(UserStatistics.decadeLabel((Integer) bucket[0]), (Long) bucket[1]));
+    return aggregates.zipWith(
+        histogram,
+        (stats, ageHistogram) -> {
+          stats.setAgeHistogram(ageHistogram);
+          return stats;
+        });
+  }
+
+  private UserStatsDTO toStats(Row row) {
+    Map<String, Double> percentiles = new LinkedHashMap<>();
+    for (int i = 0; i < UserStatistics.PERCENTILES.length; i++)
+      percentiles.put(
+          UserStatistics.percentileLabel(UserStatistics.PERCENTILES[i]), toDouble(row, "p" + i));
+    return UserStatsDTO.builder()
+        .exact(true)
+        .count(row.get("n", Number.class).longValue())
+        .averageAge(toDouble(row, "average_age"))
+        .minSalary(toDouble(row, "min_salary"))
+        .maxSalary(toDouble(row, "max_salary"))
+        .averageSalary(toDouble(row, "average_salary"))
+        .salaryPercentiles(percentiles)
+        .build();
+  }
+
+  private static Double toDouble(Row row, String name) {
+    Number value = row.get(name, Number.class);
+    return value == null ? null : value.doubleValue();
+  }
+}
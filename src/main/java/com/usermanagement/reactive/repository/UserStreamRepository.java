@@ -0,0 +1,33 @@
+package com.usermanagement.reactive.repository;
+
+import com.usermanagement.reactive.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Streams the whole users table. Rows are fetched from the database in batches of fetch-size and
+ * only requested as fast as the subscriber consumes them, so memory stays flat for any table size
+ */
+@Repository
+public class UserStreamRepository {
+
+  @Autowired private DatabaseClient databaseClient;
+
+  @Autowired private R2dbcEntityTemplate template;
+
+  @Value("${app.users.stream.fetch-size:500}")
+  private int fetchSize;
+
+  public Flux<User> streamAll() {
+    return databaseClient
+        .sql("SELECT * FROM users ORDER BY id")
+        .filter(statement -> statement.fetchSize(fetchSize))
+        .map((row, metadata) -> template.getConverter().read(User.class, row, metadata))
+        .all()
+        .limitRate(fetchSize);
+  }
+}
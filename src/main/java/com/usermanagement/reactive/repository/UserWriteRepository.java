@@ -0,0 +1,117 @@
+package com.usermanagement.reactive.repository;
+
+import com.usermanagement.reactive.model.User;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Updates and deletes a user with a single statement which also returns the row as it was before,
+ * with RETURNING, instead of reading it first. H2 1.4 has no RETURNING and does not reliably apply
+ * the change made in an OLD TABLE query, so there the row is locked and read before it is written.
+ * Every update increments the version of the user
+ */
+@Repository
+public class UserWriteRepository {
+
+  @Autowired private DatabaseClient databaseClient;
+
+  @Autowired private R2dbcEntityTemplate template;
+
+  @Autowired private ConnectionFactory connectionFactory;
+
+  /**
+   * @param values new values by column, only these columns are updated
+   * @param version the update only applies to this version of the user, null to update any version
+   * @return the user before the update, empty when there is no such user or version
+   */
+  public Mono<User> update(Integer userId, Map<String, Object> values, Long version) {
+    String set =
+        values.keySet().stream()
+            .map(column -> column + " = :" + column + ", ")
+            .collect(Collectors.joining());
+    String where = " WHERE id = :id" + (version == null ? "" : " AND version = :version");
+    if (!isPostgres())
+      return lockAndRead(where, userId, version)
+          .flatMap(
+              before ->
+                  bind(
+                          databaseClient.sql(
+                              "UPDATE users SET " + set + "version = version + 1" + where),
+                          userId,
+                          version,
+                          values)
+                      .fetch()
+                      .rowsUpdated()
+                      .thenReturn(before));
+    // The previous row is locked before it is read, so it is the one that gets updated
+    return bind(
+            databaseClient.sql(
+                "UPDATE users u SET "
+                    + set
+                    + "version = u.version + 1 FROM (SELECT * FROM users"
+                    + where
+                    + " FOR UPDATE) prev WHERE u.id = prev.id RETURNING prev.*"),
+            userId,
+            version,
+            values)
+        .map(this::toUser)
+        .one();
+  }
+
+  /**
+   * @return the deleted user, empty when there is no such user
+   */
+  public Mono<User> delete(Integer userId) {
+    if (!isPostgres())
+      return lockAndRead(" WHERE id = :id", userId, null)
+          .flatMap(
+              before ->
+                  bind(databaseClient.sql("DELETE FROM users WHERE id = :id"), userId, null)
+                      .fetch()
+                      .rowsUpdated()
+                      .thenReturn(before));
+    return bind(databaseClient.sql("DELETE FROM users WHERE id = :id RETURNING *"), userId, null)
+        .map(this::toUser)
+        .one();
+  }
+
+  private Mono<User> lockAndRead(String where, Integer userId, Long version) {
+    return bind(databaseClient.sql("SELECT * FROM users" + where + " FOR UPDATE"), userId, version)
+        .map(this::toUser)
+        .one();
+  }
+
+  private static DatabaseClient.GenericExecuteSpec bind(
+      DatabaseClient.GenericExecuteSpec statement, Integer userId, Long version) {
+    return bind(statement, userId, version, Collections.emptyMap());
+  }
+
+  private static DatabaseClient.GenericExecuteSpec bind(
+      DatabaseClient.GenericExecuteSpec statement,
+      Integer userId,
+      Long version,
+      Map<String, Object> values) {
+    statement = statement.bind("id", userId);
+    if (version != null) statement = statement.bind("version", version);
+    for (Map.Entry<String, Object> value : values.entrySet())
+      statement = statement.bind(value.getKey(), value.getValue());
+    return statement;
+  }
+
+  private User toUser(Row row, RowMetadata metadata) {
+    return template.getConverter().read(User.class, row, metadata);
+  }
+
+  private boolean isPostgres() {
+    return connectionFactory.getMetadata().getName().equalsIgnoreCase("PostgreSQL");
+  }
+}
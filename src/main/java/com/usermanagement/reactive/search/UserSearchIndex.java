@@ -0,0 +1,270 @@
+package com.usermanagement.reactive.search;
+
+import com.usermanagement.reactive.model.User;
+import com.usermanagement.reactive.repository.UserStreamRepository;
+import com.usermanagement.reactive.service.UserChangeListener;
+import com.usermanagement.reactive.service.UserRebuild;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * In-memory inverted index over the user names and emails, enabled with
+ * app.users.search.engine=index. It is built once the application is ready and then kept up to date
+ * by UserService writes. A rebuild indexes the users off to the side, the current index answers the
+ * searches until it is swapped out.
+ *
+ * <p>Names are split into lower case tokens. A query token matches a name token exactly or as a
+ * prefix, and when nothing starts with it, names sharing enough trigrams with it are accepted to
+ * tolerate typos. Every query token has to match for a user to be returned. Emails match exactly,
+ * ignoring the case, like with app.users.search.engine=sql. Results are ranked by how well they
+ * match.
+ *
+ * <p>A query token looks at most app.users.search.max-candidates users, those of its exact token
+ * first and then those of the tokens it prefixes, in order. Only the best limit users are kept
+ * while they are ranked, so a short prefix matching most users costs the candidates cap at most
+ */
+@Component
+@ConditionalOnProperty(value = "app.users.search.engine", havingValue = "index")
+@Slf4j
+public class UserSearchIndex implements UserChangeListener {
+  private static final double EXACT_EMAIL = 10;
+  private static final double EXACT_TOKEN = 3, TOKEN_PREFIX = 2, FUZZY_TOKEN = 1;
+  private static final double MIN_TRIGRAM_SIMILARITY = 0.4;
+  // Worst match first, the users with the same score are ranked by id
+  private static final Comparator<Map.Entry<Integer, Double>> WORST_FIRST =
+      Map.Entry.<Integer, Double>comparingByValue()
+          .thenComparing(Map.Entry.<Integer, Double>comparingByKey().reversed());
+
+  private final int maxCandidates;
+  private volatile State state = new State();
+  private final List<UserRebuild<State>> rebuilds = new ArrayList<>();
+
+  @Autowired private UserStreamRepository userStreamRepository;
+
+  public UserSearchIndex(@Value("${app.users.search.max-candidates:10000}") int maxCandidates) {
+    this.maxCandidates = maxCandidates;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    rebuild().block();
+  }
+
+  /** Builds the index again from the users table, and then swaps it in for the current one */
+  public Mono<Void> rebuild() {
+    return Mono.defer(
+        () -> {
+          UserRebuild<State> rebuild = new UserRebuild<>(new State());
+          synchronized (this) {
+            rebuilds.add(rebuild);
+          }
+          return userStreamRepository
+              .streamAll()
+              .doOnNext(rebuild::put)
+              .then(Mono.<Void>fromRunnable(() -> swap(rebuild)))
+              .doFinally(signal -> forget(rebuild));
+        });
+  }
+
+  public List<User> search(String email, String name, int limit) {
+    State state = this.state;
+    Map<Integer, Double> scores = new HashMap<>();
+    if (email != null && !email.isEmpty()) scoreEmail(state, normalize(email), scores);
+    if (name != null && !name.isEmpty()) scoreName(state, tokenize(name), scores);
+
+    PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(limit + 1, WORST_FIRST);
+    for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+      best.add(entry);
+      if (best.size() > limit) best.poll();
+    }
+    List<Map.Entry<Integer, Double>> ranked = new ArrayList<>(best);
+    ranked.sort(WORST_FIRST.reversed());
+    List<User> result = new ArrayList<>(ranked.size());
+    for (Map.Entry<Integer, Double> entry : ranked) {
+      User user = state.users.get(entry.getKey());
+      if (user != null) result.add(user);
+    }
+    return result;
+  }
+
+  public int size() {
+    return state.users.size();
+  }
+
+  @Override
+  public synchronized void onCreated(User user) {
+    state.add(user);
+    rebuilds.forEach(rebuild -> rebuild.put(user));
+  }
+
+  @Override
+  public synchronized void onUpdated(User before, User after) {
+    state.add(after);
+    rebuilds.forEach(rebuild -> rebuild.put(after));
+  }
+
+  @Override
+  public synchronized void onDeleted(User user) {
+    state.remove(user);
+    rebuilds.forEach(rebuild -> rebuild.delete(user.getId()));
+  }
+
+  private synchronized void swap(UserRebuild<State> rebuild) {
+    state = rebuild.view();
+    log.info("Search index built with {} users", state.users.size());
+  }
+
+  private synchronized void forget(UserRebuild<State> rebuild) {
+    rebuilds.remove(rebuild);
+  }
+
+  private static void scoreEmail(State state, String email, Map<Integer, Double> scores) {
+    for (Integer id : state.emails.getOrDefault(email, Collections.emptySet()))
+      scores.merge(id, EXACT_EMAIL, Math::max);
+  }
+
+  private void scoreName(State state, List<String> queryTokens, Map<Integer, Double> scores) {
+    if (queryTokens.isEmpty()) return;
+    Map<Integer, Double> nameScores = null;
+    for (String queryToken : queryTokens) {
+      Map<Integer, Double> tokenScores = scoreToken(state, queryToken);
+      if (nameScores == null) nameScores = tokenScores;
+      else {
+        nameScores.keySet().retainAll(tokenScores.keySet());
+        for (Map.Entry<Integer, Double> entry : nameScores.entrySet())
+          entry.setValue(entry.getValue() + tokenScores.get(entry.getKey()));
+      }
+      if (nameScores.isEmpty()) return;
+    }
+    nameScores.forEach((id, score) -> scores.merge(id, score, Double::sum));
+  }
+
+  private Map<Integer, Double> scoreToken(State state, String queryToken) {
+    Map<Integer, Double> tokenScores = new HashMap<>();
+    // The exact token sorts first among the tokens it prefixes
+    for (Map.Entry<String, Set<Integer>> entry :
+        withPrefix(state.nameTokens, queryToken).entrySet()) {
+      double score = entry.getKey().equals(queryToken) ? EXACT_TOKEN : TOKEN_PREFIX;
+      for (Integer id : entry.getValue()) {
+        if (tokenScores.size() >= maxCandidates) return tokenScores;
+        tokenScores.merge(id, score, Math::max);
+      }
+    }
+    if (tokenScores.isEmpty() && queryToken.length() >= 3) {
+      Set<String> queryTrigrams = trigramsOf(queryToken);
+      Map<String, Integer> shared = new HashMap<>();
+      for (String trigram : queryTrigrams)
+        for (String token : state.trigrams.getOrDefault(trigram, Collections.emptySet()))
+          shared.merge(token, 1, Integer::sum);
+      for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+        int union = queryTrigrams.size() + trigramsOf(entry.getKey()).size() - entry.getValue();
+        double similarity = (double) entry.getValue() / union;
+        if (similarity < MIN_TRIGRAM_SIMILARITY) continue;
+        for (Integer id : state.nameTokens.getOrDefault(entry.getKey(), Collections.emptySet())) {
+          if (tokenScores.size() >= maxCandidates) return tokenScores;
+          tokenScores.merge(id, FUZZY_TOKEN * similarity, Math::max);
+        }
+      }
+    }
+    return tokenScores;
+  }
+
+  // Returns true when no user is left for the given term
+  private static boolean removePosting(
+      Map<String, Set<Integer>> postings, String term, Integer id) {
+    Set<Integer> ids = postings.get(term);
+    if (ids == null) return false;
+    ids.remove(id);
+    if (!ids.isEmpty()) return false;
+    postings.remove(term);
+    return true;
+  }
+
+  private static Map<String, Set<Integer>> withPrefix(
+      ConcurrentSkipListMap<String, Set<Integer>> postings, String prefix) {
+    return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+  }
+
+  private static String normalize(String text) {
+    return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+  }
+
+  static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<>();
+    StringBuilder token = new StringBuilder();
+    for (char c : normalize(text).toCharArray()) {
+      if (Character.isLetterOrDigit(c)) token.append(c);
+      else if (token.length() > 0) {
+        tokens.add(token.toString());
+        token.setLength(0);
+      }
+    }
+    if (token.length() > 0) tokens.add(token.toString());
+    return tokens;
+  }
+
+  // The token is padded so that its first and last characters weigh as much as the others
+  private static Set<String> trigramsOf(String token) {
+    String padded = "  " + token + " ";
+    Set<String> result = new HashSet<>();
+    for (int i = 0; i + 3 <= padded.length(); i++) result.add(padded.substring(i, i + 3));
+    return result;
+  }
+  // The users are indexed one at a time, by the owner of the state. It is read concurrently
+  private static final class State implements UserRebuild.View {
+    private final Map<Integer, User> users = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Set<Integer>> nameTokens =
+        new ConcurrentSkipListMap<>();
+    private final Map<String, Set<Integer>> emails = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> trigrams = new ConcurrentHashMap<>();
+
+    @Override
+    public void add(User user) {
+      remove(user);
+      users.put(user.getId(), user);
+      for (String token : tokenize(user.getName())) {
+        nameTokens.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(user.getId());
+        for (String trigram : trigramsOf(token))
+          trigrams.computeIfAbsent(trigram, t -> ConcurrentHashMap.newKeySet()).add(token);
+      }
+      emails
+          .computeIfAbsent(normalize(user.getEmail()), e -> ConcurrentHashMap.newKeySet())
+          .add(user.getId());
+    }
+
+    // The indexed version of the user is removed, whichever it is
+    @Override
+    public void remove(User removed) {
+      User user = users.remove(removed.getId());
+      if (user == null) return;
+      for (String token : tokenize(user.getName())) {
+        if (removePosting(nameTokens, token, user.getId()))
+          for (String trigram : trigramsOf(token)) {
+            Set<String> tokens = trigrams.get(trigram);
+            if (tokens == null) continue;
+            tokens.remove(token);
+            if (tokens.isEmpty()) trigrams.remove(trigram);
+          }
+      }
+      removePosting(emails, normalize(user.getEmail()), user.getId());
+    }
+  }
+}
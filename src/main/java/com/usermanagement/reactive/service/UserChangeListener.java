@@ -0,0 +1,16 @@
+package com.usermanagement.reactive.service;
+
+import com.usermanagement.reactive.model.User;
+
+/**
+ * Components keeping in-memory state derived from the users table implement this interface.
+ * UserService calls every listener once a write is committed
+ */
+public interface UserChangeListener {
+
+  default void onCreated(User user) {}
+
+  default void onUpdated(User before, User after) {}
+
+  default void onDeleted(User user) {}
+}
@@ -0,0 +1,280 @@
+package com.usermanagement.reactive.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usermanagement.reactive.cache.UserCache;
+import com.usermanagement.reactive.changes.UserChangeFeed;
+import com.usermanagement.reactive.dto.UserImportResultDTO;
+import com.usermanagement.reactive.model.User;
+import com.usermanagement.reactive.repository.UserBatchRepository;
+import com.usermanagement.reactive.search.UserSearchIndex;
+import com.usermanagement.reactive.stats.UserStatistics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Imports users from a CSV or newline delimited JSON file. The file is parsed line by line as it is
+ * received, without being held in memory, and rows are validated like POST /v1/users. Valid rows
+ * are upserted on their email in batches of app.users.import.batch-size, with at most
+ * app.users.import.max-in-flight batches being written at a time, each in its own transaction.
+ * Reading the file waits for the database, so a slow database slows the upload down instead of
+ * filling the memory.
+ *
+ * <p>Within a batch the last row of an email wins. With more than one batch in flight, an email
+ * repeated in different batches may end up with any of its rows
+ */
+@Service
+@Slf4j
+public class UserImportService {
+  private static final ResolvableType STRING = ResolvableType.forClass(String.class);
+  private static final List<String> CSV_COLUMNS = Arrays.asList("name", "age", "salary", "email");
+
+  public enum Format {
+    CSV,
+    NDJSON
+  }
+
+  @Autowired private UserService userService;
+
+  @Autowired private UserBatchRepository userBatchRepository;
+
+  @Autowired private TransactionalOperator transactionalOperator;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Autowired private UserCache userCache;
+
+  @Autowired private UserStatistics userStatistics;
+
+  @Autowired private UserChangeFeed userChangeFeed;
+
+  @Autowired(required = false)
+  private UserSearchIndex userSearchIndex;
+
+  @Value("${app.users.import.batch-size:1000}")
+  private int batchSize;
+
+  @Value("${app.users.import.max-in-flight:2}")
+  private int maxInFlight;
+
+  @Value("${app.users.import.max-errors:100}")
+  private int maxErrors;
+
+  /**
+   * Emits the progress after every written batch, and the summary last. A file whose CSV header
+   * lacks a column fails with an IllegalArgumentException before anything is written
+   */
+  public Flux<UserImportResultDTO> importUsers(Flux<DataBuffer> body, Format format) {
+    return Flux.defer(
+        () -> {
+          Progress progress = new Progress();
+          Parser parser = format == Format.CSV ? new CsvParser() : new NdjsonParser();
+          return StringDecoder.allMimeTypes()
+              .decode(body, STRING, null, null)
+              .index()
+              .<Row>handle(
+                  (line, sink) -> {
+                    Row row = parser.parse(line.getT1() + 1, line.getT2());
+                    if (row == null) return;
+                    if (row.error == null) row.error = userService.validate(row.user);
+                    if (row.error == null) sink.next(row);
+                    else progress.failed(Collections.singletonList(row));
+                  })
+              .buffer(batchSize)
+              .flatMapSequential(
+                  batch -> write(batch).map(failed -> progress.written(batch.size(), failed)),
+                  maxInFlight,
+                  1)
+              .concatWith(Mono.defer(() -> refresh(progress).thenReturn(progress.snapshot(true))))
+              .doOnComplete(
+                  () ->
+                      log.info(
+                          "Imported {} users out of {} rows", progress.imported, progress.rows));
+        });
+  }
+
+  // A batch is written with one statement, when it fails its rows are written one by one so that
+  // the failing rows can be reported. Returns the failing rows
+  private Mono<List<Row>> write(List<Row> batch) {
+    Map<String, Row> lastByEmail = new LinkedHashMap<>();
+    for (Row row : batch) lastByEmail.put(row.user.getEmail(), row);
+    List<User> users = new ArrayList<>(lastByEmail.size());
+    lastByEmail.values().forEach(row -> users.add(row.user));
+    // Rows are locked in the same order by every batch, so that concurrent batches cannot deadlock
+    users.sort(Comparator.comparing(User::getEmail));
+    // The written users are cached once committed, the cache keeps the newest version of each
+    return userBatchRepository
+        .upsertAll(users)
+        .collectList()
+        .as(transactionalOperator::transactional)
+        .doOnNext(written -> written.forEach(userCache::put))
+        .thenReturn(Collections.<Row>emptyList())
+        .onErrorResume(
+            e -> {
+              if (batch.size() == 1) {
+                batch.get(0).error = userService.describeBatchError(e);
+                return Mono.just(batch);
+              }
+              return Flux.fromIterable(batch)
+                  .concatMap(row -> write(Collections.singletonList(row)))
+                  .flatMapIterable(failed -> failed)
+                  .collectList();
+            });
+  }
+
+  // The statistics and the search index are rebuilt once, instead of being updated for every row,
+  // and the subscribers of the changes are told to read the users again
+  private Mono<Void> refresh(Progress progress) {
+    if (progress.imported == 0) return Mono.empty();
+    userChangeFeed.publishResync();
+    Mono<Void> statistics = userStatistics.seed();
+    return userSearchIndex == null ? statistics : statistics.then(userSearchIndex.rebuild());
+  }
+
+  private static final class Row {
+    private final long line;
+    private final User user;
+    private String error;
+
+    Row(long line, User user, String error) {
+      this.line = line;
+      this.user = user;
+      this.error = error;
+    }
+  }
+
+  private final class Progress {
+    private long rows;
+    private long imported;
+    private long failed;
+    private final List<UserImportResultDTO.Row> errors = new ArrayList<>();
+
+    synchronized void failed(List<Row> failedRows) {
+      for (Row row : failedRows) {
+        rows++;
+        failed++;
+        if (errors.size() < maxErrors) errors.add(new UserImportResultDTO.Row(row.line, row.error));
+      }
+    }
+
+    synchronized UserImportResultDTO written(int batchSize, List<Row> failedRows) {
+      rows += batchSize - failedRows.size();
+      imported += batchSize - failedRows.size();
+      failed(failedRows);
+      return snapshot(false);
+    }
+
+    synchronized UserImportResultDTO snapshot(boolean done) {
+      return new UserImportResultDTO(rows, imported, failed, done, new ArrayList<>(errors));
+    }
+  }
+
+  private interface Parser {
+    /** Returns null for a line without a user */
+    Row parse(long line, String text);
+  }
+
+  private final class NdjsonParser implements Parser {
+    @Override
+    public Row parse(long line, String text) {
+      if (text.trim().isEmpty()) return null;
+      try {
+        User user = objectMapper.readValue(text, User.class);
+        if (user == null) return new Row(line, null, "User cannot be null");
+        user.setId(null);
+        user.setVersion(null);
+        return new Row(line, user, null);
+      } catch (JsonProcessingException e) {
+        return new Row(line, null, "Malformed user");
+      }
+    }
+  }
+
+  // The first line names the columns, in any order. Fields may be quoted, a quote in a quoted field
+  // is doubled. Quoted fields cannot span lines
+  private static final class CsvParser implements Parser {
+    private Map<String, Integer> columns;
+
+    @Override
+    public Row parse(long line, String text) {
+      if (columns == null) {
+        columns = header(text);
+        return null;
+      }
+      if (text.trim().isEmpty()) return null;
+      List<String> fields = split(text);
+      if (fields.size() != columns.size())
+        return new Row(
+            line, null, "Expected " + columns.size() + " fields but found " + fields.size());
+      User user = new User();
+      user.setName(field(fields, "name"));
+      user.setEmail(field(fields, "email"));
+      try {
+        user.setAge(Integer.parseInt(field(fields, "age")));
+      } catch (NumberFormatException e) {
+        return new Row(line, null, "Age should be a number");
+      }
+      try {
+        String salary = field(fields, "salary");
+        user.setSalary(salary == null || salary.isEmpty() ? 0 : Double.parseDouble(salary));
+      } catch (NumberFormatException e) {
+        return new Row(line, null, "Salary should be a number");
+      }
+      return new Row(line, user, null);
+    }
+
+    private String field(List<String> fields, String column) {
+      Integer index = columns.get(column);
+      return index == null ? null : fields.get(index);
+    }
+
+    private static Map<String, Integer> header(String text) {
+      // A byte order mark may precede the header
+      List<String> names = split(text.startsWith("﻿") ? text.substring(1) : text);
+      Map<String, Integer> columns = new HashMap<>();
+      for (int i = 0; i < names.size(); i++) columns.put(names.get(i).toLowerCase(Locale.ROOT), i);
+      for (String column : CSV_COLUMNS)
+        if (!column.equals("salary") && !columns.containsKey(column))
+          throw new IllegalArgumentException("The CSV header has no " + column + " column");
+      return columns;
+    }
+
+    static List<String> split(String text) {
+      List<String> fields = new ArrayList<>();
+      StringBuilder field = new StringBuilder();
+      boolean quoted = false;
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (quoted) {
+          if (c != '"') field.append(c);
+          else if (i + 1 < text.length() && text.charAt(i + 1) == '"')
+            field.append(text.charAt(++i));
+          else quoted = false;
+        } else if (c == '"') quoted = true;
+        else if (c == ',') {
+          fields.add(field.toString().trim());
+          field.setLength(0);
+        } else field.append(c);
+      }
+      fields.add(field.toString().trim());
+      return fields;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.usermanagement.reactive.service;
+
+import com.usermanagement.reactive.model.User;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a view of the users again, off to the side, while the current one keeps serving. It is fed
+ * both the rows read from the users table and the writes committed meanwhile. They overlap and may
+ * come in any order, so only the newest version of a user is kept in the view, and a deleted user
+ * is not added back. Once the table was read, the owner swaps the view in, making sure that no
+ * write is notified in between
+ */
+public final class UserRebuild<V extends UserRebuild.View> {
+
+  /** The state being rebuilt, only changed through its UserRebuild */
+  public interface View {
+    void add(User user);
+
+    void remove(User user);
+  }
+
+  private final V view;
+  private final Map<Integer, User> users = new HashMap<>();
+  private final Set<Integer> deleted = new HashSet<>();
+
+  public UserRebuild(V view) {
+    this.view = view;
+  }
+
+  public V view() {
+    return view;
+  }
+
+  public synchronized void put(User user) {
+    if (deleted.contains(user.getId())) return;
+    User current = users.get(user.getId());
+    if (current != null) {
+      if (isOlder(user, current)) return;
+      view.remove(current);
+    }
+    users.put(user.getId(), user);
+    view.add(user);
+  }
+
+  public synchronized void delete(Integer userId) {
+    deleted.add(userId);
+    User current = users.remove(userId);
+    if (current != null) view.remove(current);
+  }
+
+  private static boolean isOlder(User user, User current) {
+    return user.getVersion() != null
+        && current.getVersion() != null
+        && user.getVersion() < current.getVersion();
+  }
+}
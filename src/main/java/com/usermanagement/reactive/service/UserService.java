@@ -3,24 +3,65 @@ package com.usermanagement.reactive.service;
 import static org.springframework.data.domain.ExampleMatcher.GenericPropertyMatchers.startsWith;
 import static org.springframework.data.domain.ExampleMatcher.matchingAny;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usermanagement.reactive.cache.UserCache;
+import com.usermanagement.reactive.config.ReplicaRoutingConnectionFactory;
+import com.usermanagement.reactive.dto.UserBatchResultDTO;
+import com.usermanagement.reactive.dto.UserCursorPageDTO;
 import com.usermanagement.reactive.dto.UserDepartmentDTO;
-import com.usermanagement.reactive.model.Department;
+import com.usermanagement.reactive.dto.UserFilterDTO;
+import com.usermanagement.reactive.dto.UserPatchDTO;
+import com.usermanagement.reactive.dto.UserStatsDTO;
 import com.usermanagement.reactive.model.User;
-import com.usermanagement.reactive.repository.DepartmentRepository;
+import com.usermanagement.reactive.repository.UserBatchRepository;
+import com.usermanagement.reactive.repository.UserCriteriaRepository;
+import com.usermanagement.reactive.repository.UserDepartmentRepository;
+import com.usermanagement.reactive.repository.UserKeysetRepository;
 import com.usermanagement.reactive.repository.UserPaginationRepository;
 import com.usermanagement.reactive.repository.UserRepository;
 import com.usermanagement.reactive.repository.UserSearchRepository;
+import com.usermanagement.reactive.repository.UserStatsRepository;
+import com.usermanagement.reactive.repository.UserStreamRepository;
+import com.usermanagement.reactive.repository.UserWriteRepository;
+import com.usermanagement.reactive.search.UserSearchIndex;
+import com.usermanagement.reactive.stats.UserStatistics;
+import com.usermanagement.reactive.utilities.ETags;
+import com.usermanagement.reactive.utilities.PageCursor;
+import com.usermanagement.reactive.utilities.SingleFlight;
 import com.usermanagement.reactive.utilities.TextSanitizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.function.BiFunction;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 /**
  * Services could be think of 'workers' in Spring Rest APIs Business logic with data accesses are
@@ -37,16 +78,199 @@ public class UserService {
 
   @Autowired private UserSearchRepository userSearchRepository;
 
-  @Autowired private DepartmentRepository departmentRepository;
+  @Autowired private UserDepartmentRepository userDepartmentRepository;
+
+  @Autowired private UserBatchRepository userBatchRepository;
+
+  @Autowired private UserWriteRepository userWriteRepository;
+
+  @Autowired private UserKeysetRepository userKeysetRepository;
+
+  @Autowired private UserStreamRepository userStreamRepository;
+
+  @Autowired private UserCriteriaRepository userCriteriaRepository;
+
+  @Autowired private UserStatsRepository userStatsRepository;
+
+  @Autowired private UserStatistics userStatistics;
+
+  @Autowired private Validator validator;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Autowired private TransactionalOperator transactionalOperator;
+
+  @Autowired private UserCache userCache;
+
+  @Autowired(required = false)
+  private UserSearchIndex userSearchIndex;
+
+  @Autowired private List<UserChangeListener> userChangeListeners;
+
+  // Concurrent reads of the same user share one database call
+  private final SingleFlight<Integer, User> userLookups = new SingleFlight<>();
+
+  private final SingleFlight<Integer, UserDepartmentDTO> userDepartmentLookups =
+      new SingleFlight<>();
+
+  @Value("${app.users.batch.chunk-size:500}")
+  private int batchChunkSize;
+
+  @Value("${app.users.batch.max-rows:100000}")
+  private int batchMaxRows;
+
+  @Value("${app.users.fetch.chunk-size:500}")
+  private int fetchChunkSize;
+
+  @Value("${app.users.query.max-limit:1000}")
+  private int queryMaxLimit;
+
+  @Value("${app.users.page.max-size:1000}")
+  private int pageMaxSize;
+
+  @Value("${app.users.search.max-limit:1000}")
+  private int searchMaxLimit;
 
   public Mono<User> createUser(User user) {
-    return userRepository.save(user);
+    // A version would make it an update of an existing user
+    user.setVersion(null);
+    return userRepository
+        .save(user)
+        .flatMap(
+            saved -> notifyListeners(saved.getId(), l -> l.onCreated(saved)).thenReturn(saved));
+  }
+
+  // Bulk creation runs every chunk in its own transaction, so that a failing chunk can be rolled
+  // back and retried row by row. A batch holds at most app.users.batch.max-rows users
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public Mono<UserBatchResultDTO> createUsers(List<User> users) {
+    if (users.size() > batchMaxRows)
+      return Mono.error(
+          new IllegalArgumentException("A batch holds at most " + batchMaxRows + " users"));
+    return createUsers(users, Collections.emptyMap());
+  }
+
+  // Same as above for newline delimited JSON, decoded line by line as it arrives. A line which is
+  // not a user is reported as a failed row, blank lines are skipped
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public Mono<UserBatchResultDTO> createUsersFromNdjson(Flux<DataBuffer> body) {
+    List<User> users = new ArrayList<>();
+    Map<Integer, String> malformed = new HashMap<>();
+    return StringDecoder.allMimeTypes()
+        .decode(body, ResolvableType.forClass(String.class), null, null)
+        .filter(line -> !line.trim().isEmpty())
+        .concatMap(
+            line -> {
+              if (users.size() == batchMaxRows)
+                return Mono.error(
+                    new IllegalArgumentException(
+                        "A batch holds at most " + batchMaxRows + " users"));
+              try {
+                users.add(objectMapper.readValue(line, User.class));
+              } catch (JsonProcessingException e) {
+                malformed.put(users.size(), "Malformed user");
+                users.add(null);
+              }
+              return Mono.empty();
+            })
+        .then(Mono.defer(() -> createUsers(users, malformed)));
+  }
+
+  private Mono<UserBatchResultDTO> createUsers(List<User> users, Map<Integer, String> malformed) {
+    UserBatchResultDTO.Row[] rows = new UserBatchResultDTO.Row[users.size()];
+    List<Integer> validIndexes = new ArrayList<>();
+    for (int i = 0; i < users.size(); i++) {
+      String error = malformed.containsKey(i) ? malformed.get(i) : validate(users.get(i));
+      if (error == null) validIndexes.add(i);
+      else rows[i] = new UserBatchResultDTO.Row(i, null, error);
+    }
+    return Flux.fromIterable(validIndexes)
+        .buffer(batchChunkSize)
+        .concatMap(indexes -> insertChunk(users, indexes))
+        .doOnNext(row -> rows[row.getIndex()] = row)
+        .then(Mono.fromSupplier(() -> toBatchResult(rows)));
+  }
+
+  // A chunk is written with one statement, when it fails its rows are retried one by one so that
+  // the failing rows can be reported. The listeners are only notified of a written chunk, outside
+  // of the retries
+  private Flux<UserBatchResultDTO.Row> insertChunk(List<User> users, List<Integer> indexes) {
+    List<User> chunk = indexes.stream().map(users::get).collect(Collectors.toList());
+    return userBatchRepository
+        .insertAll(chunk)
+        .as(transactionalOperator::transactional)
+        .collectList()
+        .map(ids -> created(chunk, indexes, ids))
+        .onErrorResume(
+            e ->
+                Mono.just(
+                    indexes.size() > 1
+                        ? Flux.fromIterable(indexes)
+                            .concatMap(i -> insertChunk(users, Collections.singletonList(i)))
+                        : Flux.just(
+                            new UserBatchResultDTO.Row(
+                                indexes.get(0), null, describeBatchError(e)))))
+        .flatMapMany(rows -> rows);
+  }
+
+  private Flux<UserBatchResultDTO.Row> created(
+      List<User> chunk, List<Integer> indexes, List<Integer> ids) {
+    List<UserBatchResultDTO.Row> rows = new ArrayList<>(ids.size());
+    for (int i = 0; i < ids.size(); i++) {
+      User user = chunk.get(i);
+      user.setId(ids.get(i));
+      user.setVersion(0L);
+      rows.add(new UserBatchResultDTO.Row(indexes.get(i), ids.get(i), null));
+    }
+    return Flux.fromIterable(chunk)
+        .concatMap(user -> notifyListeners(user.getId(), l -> l.onCreated(user)))
+        .thenMany(Flux.fromIterable(rows));
+  }
+
+  String validate(User user) {
+    if (user == null) return "User cannot be null";
+    Set<ConstraintViolation<User>> violations = validator.validate(user);
+    if (violations.isEmpty()) return null;
+    return violations.stream()
+        .map(ConstraintViolation::getMessage)
+        .sorted()
+        .collect(Collectors.joining(", "));
+  }
+
+  String describeBatchError(Throwable e) {
+    String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+    if (message != null && message.toLowerCase().contains("email_unique")) return "email_unique";
+    return message;
   }
 
+  private UserBatchResultDTO toBatchResult(UserBatchResultDTO.Row[] rows) {
+    int created = 0;
+    for (UserBatchResultDTO.Row row : rows) if (row.getError() == null) created++;
+    return UserBatchResultDTO.builder()
+        .created(created)
+        .failed(rows.length - created)
+        .rows(Arrays.asList(rows))
+        .build();
+  }
+
+  @Transactional(readOnly = true)
   public Flux<User> getAllUsers() {
     return userRepository.findAll();
   }
 
+  // Entity tag of getAllUsers, it changes with any write to the users table
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+  public Mono<String> getAllUsersETag() {
+    return userStatsRepository.fingerprint().map(ETags::digest);
+  }
+
+  // Unlike getAllUsers the rows are read lazily, as fast as the client consumes them
+  @Transactional(readOnly = true)
+  public Flux<User> streamAllUsers() {
+    return userStreamRepository.streamAll();
+  }
+
+  @Transactional(readOnly = true)
   public Mono<Page<User>> getUsers(PageRequest pageRequest) {
     return this.userPaginationRepository
         .findAllBy(pageRequest)
@@ -55,67 +279,277 @@ public class UserService {
         .map(t -> new PageImpl<>(t.getT1(), pageRequest, t.getT2()));
   }
 
+  // Keyset pagination, every page seeks right after the sort key and id of the previous page so
+  // that deep pages are as fast as the first one. Counting all users is optional
+  @Transactional(readOnly = true)
+  public Mono<UserCursorPageDTO> getUsersAfter(
+      String property, Sort.Direction direction, String cursor, int size, boolean withCount) {
+    if (!Arrays.asList("id", "name", "email", "age", "salary").contains(property))
+      return Mono.error(new IllegalArgumentException("Users cannot be paged by " + property));
+    if (size < 1 || size > pageMaxSize)
+      return Mono.error(
+          new IllegalArgumentException("The page size should be between 1 and " + pageMaxSize));
+    PageCursor after = cursor == null ? null : PageCursor.decode(cursor);
+    if (after != null
+        && (!after.getProperty().equals(property) || after.getDirection() != direction))
+      return Mono.error(new IllegalArgumentException("Page cursor does not match the sort order"));
+
+    Mono<List<User>> users =
+        userKeysetRepository
+            .findPage(
+                property,
+                direction,
+                after == null ? null : parseSortValue(property, after.getLastValue()),
+                after == null ? null : after.getLastId(),
+                size + 1)
+            .collectList();
+    Mono<Optional<Long>> total =
+        withCount
+            ? userPaginationRepository.count().map(Optional::of)
+            : Mono.just(Optional.empty());
+    return users
+        .zipWith(total)
+        .map(
+            t -> {
+              List<User> content = t.getT1();
+              String next = null;
+              if (content.size() > size) {
+                content = content.subList(0, size);
+                User last = content.get(size - 1);
+                next =
+                    new PageCursor(property, direction, last.getId(), sortValue(property, last))
+                        .encode();
+              }
+              return UserCursorPageDTO.builder()
+                  .content(content)
+                  .next(next)
+                  .totalElements(t.getT2().orElse(null))
+                  .build();
+            });
+  }
+
+  private String sortValue(String property, User user) {
+    switch (property) {
+      case "name":
+        return user.getName();
+      case "email":
+        return user.getEmail();
+      case "age":
+        return String.valueOf(user.getAge());
+      case "salary":
+        return String.valueOf(user.getSalary());
+      default:
+        return String.valueOf(user.getId());
+    }
+  }
+
+  private Object parseSortValue(String property, String value) {
+    switch (property) {
+      case "age":
+      case "id":
+        return Integer.valueOf(value);
+      case "salary":
+        return Double.valueOf(value);
+      default:
+        return value;
+    }
+  }
+
+  // Served from the user cache when possible. It only joins an existing transaction, so that a
+  // cache hit does not open one. On a miss, concurrent reads of the same user share one query,
+  // which goes to a replica when there are some. A caller who wrote in its readYourWrites scope
+  // reads on its own from the primary instead, as the cache may be loading from a lagging replica
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
   public Mono<User> findById(Integer userId) {
-    return userRepository.findById(userId);
+    return Mono.deferContextual(
+        context ->
+            ReplicaRoutingConnectionFactory.readsOwnWrites(context)
+                ? userRepository.findById(userId)
+                : userCache.get(
+                    userId,
+                    id -> userLookups.execute(id, key -> onReplica(userRepository.findById(key)))));
   }
 
-  // We heavily use Java Streams API for code readability
+  // The user is updated with a single statement. When the given version is not the current one
+  // anymore, the update fails with an OptimisticLockingFailureException
   public Mono<User> updateUser(Integer userId, User user) {
-    return userRepository
-        .findById(userId)
+    return patchUser(
+        userId,
+        new UserPatchDTO(
+            user.getName(), user.getAge(), user.getSalary(), user.getEmail(), user.getVersion()));
+  }
+
+  // Same as above for the given fields only
+  public Mono<User> patchUser(Integer userId, UserPatchDTO patch) {
+    Map<String, Object> values = new LinkedHashMap<>();
+    if (patch.getName() != null) values.put("name", patch.getName());
+    if (patch.getAge() != null) values.put("age", patch.getAge());
+    if (patch.getSalary() != null) values.put("salary", patch.getSalary());
+    if (patch.getEmail() != null) values.put("email", patch.getEmail());
+    if (values.isEmpty())
+      return Mono.error(new IllegalArgumentException("At least one field should be updated"));
+    return userWriteRepository
+        .update(userId, values, patch.getVersion())
+        .switchIfEmpty(conflictIfExists(userId, patch.getVersion()))
         .flatMap(
-            dbUser -> {
-              dbUser.setAge(user.getAge());
-              dbUser.setSalary(user.getSalary());
-              dbUser.setName(user.getName());
-              dbUser.setEmail(user.getEmail());
-              return userRepository.save(dbUser);
+            before -> {
+              User after =
+                  new User(
+                      before.getId(),
+                      Optional.ofNullable(patch.getName()).orElse(before.getName()),
+                      Optional.ofNullable(patch.getAge()).orElse(before.getAge()),
+                      Optional.ofNullable(patch.getSalary()).orElse(before.getSalary()),
+                      Optional.ofNullable(patch.getEmail()).orElse(before.getEmail()),
+                      before.getVersion() + 1);
+              return notifyListeners(userId, l -> l.onUpdated(before, after)).thenReturn(after);
             });
   }
 
-  public Mono<User> deleteUser(Integer userId) {
+  // Nothing was updated, either because the user does not exist or because of its version
+  private Mono<User> conflictIfExists(Integer userId, Long version) {
+    if (version == null) return Mono.empty();
     return userRepository
-        .findById(userId)
-        .flatMap(existingUser -> userRepository.delete(existingUser).then(Mono.just(existingUser)));
+        .existsById(userId)
+        .filter(exists -> exists)
+        .flatMap(
+            exists ->
+                Mono.error(
+                    new OptimisticLockingFailureException(
+                        "User " + userId + " is not at version " + version + " anymore")));
   }
 
+  public Mono<User> deleteUser(Integer userId) {
+    return userWriteRepository
+        .delete(userId)
+        .flatMap(
+            deleted ->
+                notifyListeners(deleted.getId(), l -> l.onDeleted(deleted)).thenReturn(deleted));
+  }
+
+  // Reads started before the write are not joined anymore, they may return the old user
+  private Mono<Void> notifyListeners(Integer userId, Consumer<UserChangeListener> event) {
+    return afterCommit(
+        () -> {
+          userLookups.forget(userId);
+          userDepartmentLookups.forget(userId);
+          userChangeListeners.forEach(event);
+        });
+  }
+
+  // Runs the action once the current transaction is committed, or right away without a transaction.
+  // This way in-memory state never sees a write that is later rolled back
+  private Mono<Void> afterCommit(Runnable action) {
+    return TransactionSynchronizationManager.forCurrentTransaction()
+        .filter(TransactionSynchronizationManager::isSynchronizationActive)
+        .doOnNext(
+            synchronizationManager ->
+                synchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                      @Override
+                      public Mono<Void> afterCommit() {
+                        return Mono.fromRunnable(action);
+                      }
+                    }))
+        .switchIfEmpty(Mono.fromRunnable(action))
+        .onErrorResume(NoTransactionException.class, e -> Mono.fromRunnable(action))
+        .then();
+  }
+
+  @Transactional(readOnly = true)
   public Flux<User> findUsersByAge(int age) {
     return userRepository.findByAge(age);
   }
 
-  // Here the db lookup uses parallel processing
+  // All the filters are sent to the database as one query, at most app.users.query.max-limit users
+  // are returned
+  @Transactional(readOnly = true)
+  public Flux<User> findUsers(UserFilterDTO filter) {
+    int limit = filter.getLimit() == null ? queryMaxLimit : filter.getLimit();
+    if (limit < 1 || limit > queryMaxLimit)
+      return Flux.error(
+          new IllegalArgumentException("The limit should be between 1 and " + queryMaxLimit));
+    return userCriteriaRepository.findAll(filter, limit);
+  }
+
+  // Here the ids are looked up with one "id IN (...)" query per chunk. Duplicate ids are removed
+  // and the users are returned in the order their ids were requested. Ids already being read by
+  // another request join that read instead of being queried again, unless this one wrote before,
+  // as in findById
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
   public Flux<User> fetchUsers(List<Integer> userIds) {
-    return Flux.fromIterable(userIds)
-        .parallel()
-        .runOn(Schedulers.elastic())
-        .flatMap(i -> findById(i))
-        .ordered((u1, u2) -> u2.getId() - u1.getId());
+    List<Integer> distinctIds =
+        userIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+    return Flux.fromIterable(distinctIds)
+        .buffer(fetchChunkSize)
+        .concatMap(
+            chunk ->
+                Flux.deferContextual(
+                    context ->
+                        ReplicaRoutingConnectionFactory.readsOwnWrites(context)
+                            ? userRepository.findAllById(chunk)
+                            : userLookups.executeAll(
+                                chunk,
+                                User::getId,
+                                ids -> onReplica(userRepository.findAllById(ids)))))
+        .collectMap(User::getId)
+        .flatMapIterable(
+            users ->
+                distinctIds.stream()
+                    .map(users::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()));
   }
 
-  private Mono<Department> getDepartmentByUserId(Integer userId) {
-    return departmentRepository.findByUserId(userId);
+  // The statistics are kept up to date in memory, exact ones are computed by the database
+  @Transactional(readOnly = true)
+  public Mono<UserStatsDTO> getStats(boolean exact) {
+    return exact ? userStatsRepository.aggregate() : Mono.fromSupplier(userStatistics::snapshot);
   }
 
-  // Here we combine data from two different tables
+  // Here we combine data from two different tables with a single join query, shared by concurrent
+  // reads of the same user unless the caller wrote before, as in findById
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
   public Mono<UserDepartmentDTO> fetchUserAndDepartment(Integer userId) {
-    Mono<User> user = findById(userId).subscribeOn(Schedulers.elastic());
-    Mono<Department> department = getDepartmentByUserId(userId).subscribeOn(Schedulers.elastic());
-    return Mono.zip(user, department, userDepartmentDTOBiFunction);
-  }
-
-  private BiFunction<User, Department, UserDepartmentDTO> userDepartmentDTOBiFunction =
-      (x1, x2) ->
-          UserDepartmentDTO.builder()
-              .age(x1.getAge())
-              .departmentId(x2.getId())
-              .departmentName(x2.getName())
-              .userName(x1.getName())
-              .userId(x1.getId())
-              .loc(x2.getLoc())
-              .salary(x1.getSalary())
-              .build();
-
-  public Flux<User> findUsersByEmailOrName(String email, String name) {
+    return Mono.deferContextual(
+        context ->
+            ReplicaRoutingConnectionFactory.readsOwnWrites(context)
+                ? userDepartmentRepository.findByUserId(userId).next()
+                : userDepartmentLookups.execute(
+                    userId, id -> onReplica(userDepartmentRepository.findByUserId(id).next())));
+  }
+
+  // The shared lookups run apart from the transactions of their callers, so they are marked
+  // read-only themselves
+  private static <T> Mono<T> onReplica(Mono<T> lookup) {
+    return lookup.contextWrite(context -> ReplicaRoutingConnectionFactory.readOnly(context, true));
+  }
+
+  private static <T> Flux<T> onReplica(Flux<T> lookup) {
+    return lookup.contextWrite(context -> ReplicaRoutingConnectionFactory.readOnly(context, true));
+  }
+
+  // Same as above for many users, one query per chunk of ids
+  @Transactional(readOnly = true)
+  public Flux<UserDepartmentDTO> fetchUsersAndDepartments(List<Integer> userIds) {
+    return Flux.fromIterable(
+            userIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList()))
+        .buffer(fetchChunkSize)
+        .concatMap(userDepartmentRepository::findByUserIds);
+  }
+
+  // Served by the in-memory search index when app.users.search.engine=index, by SQL otherwise
+  @Transactional(readOnly = true)
+  public Flux<User> findUsersByEmailOrName(String email, String name, int limit) {
+    if (limit < 1 || limit > searchMaxLimit)
+      return Flux.error(
+          new IllegalArgumentException("The limit should be between 1 and " + searchMaxLimit));
+    if (userSearchIndex != null)
+      return Flux.fromIterable(
+          userSearchIndex.search(
+              email == null || email.isEmpty() ? null : TextSanitizer.sanitize(email),
+              name == null || name.isEmpty() ? null : TextSanitizer.sanitize(name),
+              limit));
+
     User user = new User();
     if (email != null && !email.equals("")) user.setEmail(TextSanitizer.sanitize(email));
     if (name != null && !name.equals("")) user.setName(TextSanitizer.sanitize(name));
@@ -128,6 +562,6 @@ public class UserService {
             .withIgnorePaths("salary")
             .withIgnorePaths("id");
     Example<User> searchCriteriaExample = Example.of(user, matcher);
-    return userSearchRepository.findAll(searchCriteriaExample);
+    return userSearchRepository.findAll(searchCriteriaExample).take(limit);
   }
 }
@@ -0,0 +1,90 @@
+package com.usermanagement.reactive.stats;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Mergeable quantile sketch with relative error guarantees (same idea as DDSketch). Values are
+ * counted in logarithmic buckets, so a quantile is off by at most the relative accuracy whatever
+ * the distribution is. Unlike most sketches values can also be removed, which lets it follow
+ * updates and deletes. Not thread safe
+ */
+public class QuantileSketch {
+  private final double gamma;
+  private final double logGamma;
+  private final NavigableMap<Integer, Long> positive = new TreeMap<>();
+  private final NavigableMap<Integer, Long> negative = new TreeMap<>();
+  private long zeroCount;
+  private long count;
+
+  public QuantileSketch(double relativeAccuracy) {
+    this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    this.logGamma = Math.log(gamma);
+  }
+
+  public void add(double value) {
+    update(value, 1);
+  }
+
+  public void remove(double value) {
+    update(value, -1);
+  }
+
+  public void merge(QuantileSketch other) {
+    other.positive.forEach((index, n) -> positive.merge(index, n, Long::sum));
+    other.negative.forEach((index, n) -> negative.merge(index, n, Long::sum));
+    zeroCount += other.zeroCount;
+    count += other.count;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  /** Returns the value at the given quantile between 0 and 1, or NaN when the sketch is empty */
+  public double quantile(double quantile) {
+    if (count == 0) return Double.NaN;
+    long rank = (long) Math.floor(quantile * (count - 1));
+    long seen = 0;
+    for (Map.Entry<Integer, Long> bucket : negative.descendingMap().entrySet()) {
+      seen += bucket.getValue();
+      if (seen > rank) return -valueOf(bucket.getKey());
+    }
+    seen += zeroCount;
+    if (seen > rank) return 0;
+    for (Map.Entry<Integer, Long> bucket : positive.entrySet()) {
+      seen += bucket.getValue();
+      if (seen > rank) return valueOf(bucket.getKey());
+    }
+    return valueOf(positive.lastKey());
+  }
+
+  public void clear() {
+    positive.clear();
+    negative.clear();
+    zeroCount = 0;
+    count = 0;
+  }
+
+  private void update(double value, long delta) {
+    count += delta;
+    if (value == 0) zeroCount += delta;
+    else if (value > 0) updateBucket(positive, indexOf(value), delta);
+    else updateBucket(negative, indexOf(-value), delta);
+  }
+
+  private static void updateBucket(NavigableMap<Integer, Long> buckets, int index, long delta) {
+    long n = buckets.getOrDefault(index, 0L) + delta;
+    if (n <= 0) buckets.remove(index);
+    else buckets.put(index, n);
+  }
+
+  private int indexOf(double value) {
+    return (int) Math.ceil(Math.log(value) / logGamma);
+  }
+
+  private double valueOf(int index) {
+    return 2 * Math.pow(gamma, index) / (gamma + 1);
+  }
+}
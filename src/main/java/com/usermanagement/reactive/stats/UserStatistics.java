@@ -0,0 +1,157 @@
+package com.usermanagement.reactive.stats;
+
+import com.usermanagement.reactive.dto.UserStatsDTO;
+import com.usermanagement.reactive.model.User;
+import com.usermanagement.reactive.repository.UserStreamRepository;
+import com.usermanagement.reactive.service.UserChangeListener;
+import com.usermanagement.reactive.service.UserRebuild;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Running aggregates over all users: counts, sums, an age histogram by decade and a quantile sketch
+ * of the salaries. They are seeded from the users table once the application is ready and then
+ * updated by every UserService write, so reading them never touches the database. Seeding them
+ * again computes new aggregates off to the side, the current ones are served until they replace
+ * them
+ */
+@Component
+@Slf4j
+public class UserStatistics implements UserChangeListener {
+  public static final double[] PERCENTILES = {0.5, 0.9, 0.95, 0.99};
+  private static final int DECADES = 16;
+
+  private final double accuracy;
+  private Aggregates aggregates;
+  private final List<UserRebuild<Aggregates>> rebuilds = new ArrayList<>();
+
+  @Autowired private UserStreamRepository userStreamRepository;
+
+  public UserStatistics(@Value("${app.users.stats.relative-accuracy:0.01}") double accuracy) {
+    this.accuracy = accuracy;
+    this.aggregates = new Aggregates(accuracy);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    seed().block();
+  }
+
+  /** Computes the aggregates again from the users table, and then replaces the current ones */
+  public Mono<Void> seed() {
+    return Mono.defer(
+        () -> {
+          UserRebuild<Aggregates> rebuild = new UserRebuild<>(new Aggregates(accuracy));
+          synchronized (this) {
+            rebuilds.add(rebuild);
+          }
+          return userStreamRepository
+              .streamAll()
+              .doOnNext(rebuild::put)
+              .then(Mono.<Void>fromRunnable(() -> swap(rebuild)))
+              .doFinally(signal -> forget(rebuild));
+        });
+  }
+
+  public synchronized UserStatsDTO snapshot() {
+    Map<String, Long> histogram = new LinkedHashMap<>();
+    for (int decade = 0; decade < DECADES; decade++)
+      if (aggregates.ageHistogram[decade] > 0)
+        histogram.put(decadeLabel(decade), aggregates.ageHistogram[decade]);
+    Map<String, Double> percentiles = new LinkedHashMap<>();
+    for (double percentile : PERCENTILES)
+      percentiles.put(
+          percentileLabel(percentile), nullIfEmpty(aggregates.salaries.quantile(percentile)));
+    long count = aggregates.count;
+    return UserStatsDTO.builder()
+        .exact(false)
+        .count(count)
+        .averageAge(count == 0 ? null : aggregates.ageSum / count)
+        .ageHistogram(histogram)
+        .minSalary(nullIfEmpty(aggregates.salaries.quantile(0)))
+        .maxSalary(nullIfEmpty(aggregates.salaries.quantile(1)))
+        .averageSalary(count == 0 ? null : aggregates.salarySum / count)
+        .salaryPercentiles(percentiles)
+        .build();
+  }
+
+  @Override
+  public synchronized void onCreated(User user) {
+    aggregates.add(user);
+    rebuilds.forEach(rebuild -> rebuild.put(user));
+  }
+
+  @Override
+  public synchronized void onUpdated(User before, User after) {
+    aggregates.remove(before);
+    aggregates.add(after);
+    rebuilds.forEach(rebuild -> rebuild.put(after));
+  }
+
+  @Override
+  public synchronized void onDeleted(User user) {
+    aggregates.remove(user);
+    rebuilds.forEach(rebuild -> rebuild.delete(user.getId()));
+  }
+
+  private synchronized void swap(UserRebuild<Aggregates> rebuild) {
+    aggregates = rebuild.view();
+    log.info("User statistics seeded with {} users", aggregates.count);
+  }
+
+  private synchronized void forget(UserRebuild<Aggregates> rebuild) {
+    rebuilds.remove(rebuild);
+  }
+
+  public static String decadeLabel(int decade) {
+    return (decade * 10) + "-" + (decade * 10 + 9);
+  }
+
+  public static String percentileLabel(double percentile) {
+    return "p" + String.valueOf(percentile * 100).replaceAll("\\.0$", "");
+  }
+
+  private static Double nullIfEmpty(double value) {
+    return Double.isNaN(value) ? null : value;
+  }
+
+  private static final class Aggregates implements UserRebuild.View {
+    private final QuantileSketch salaries;
+    private final long[] ageHistogram = new long[DECADES];
+    private long count;
+    private double ageSum;
+    private double salarySum;
+
+    Aggregates(double accuracy) {
+      this.salaries = new QuantileSketch(accuracy);
+    }
+
+    @Override
+    public void add(User user) {
+      update(user, 1);
+    }
+
+    @Override
+    public void remove(User user) {
+      update(user, -1);
+    }
+
+    private void update(User user, int delta) {
+      count += delta;
+      ageSum += delta * user.getAge();
+      salarySum += delta * user.getSalary();
+      ageHistogram[Math.max(0, Math.min(DECADES - 1, user.getAge() / 10))] += delta;
+      if (delta > 0) salaries.add(user.getSalary());
+      else salaries.remove(user.getSalary());
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package com.usermanagement.reactive.utilities;
+
+import com.usermanagement.reactive.model.User;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Strong entity tags of the user resources. A user is tagged with its id and version, a list of
+ * users with a digest of the ids and versions it contains
+ */
+public final class ETags {
+
+  private ETags() {}
+
+  public static String of(User user) {
+    return quote(user.getId() + "-" + user.getVersion());
+  }
+
+  public static String of(Collection<User> users, Object... context) {
+    StringBuilder key = new StringBuilder();
+    for (Object value : context) key.append(value).append(';');
+    for (User user : users)
+      key.append(user.getId()).append('-').append(user.getVersion()).append(',');
+    return digest(key.toString());
+  }
+
+  /** Tag of a value standing for a whole collection, e.g. its size and version sums */
+  public static String digest(String value) {
+    return quote(DigestUtils.md5DigestAsHex(value.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Whether an If-None-Match header matches the tag. As required for If-None-Match, weak tags are
+   * compared by their value
+   */
+  public static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null || etag == null) return false;
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.equals("*")) return true;
+      if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+      if (candidate.equals(etag)) return true;
+    }
+    return false;
+  }
+
+  private static String quote(String value) {
+    return '"' + value + '"';
+  }
+}
@@ -0,0 +1,36 @@
+package com.usermanagement.reactive.utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import lombok.Value;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Opaque cursor for keyset pagination. It keeps the sort key and the id of the last user of a page,
+ * so that the next page can seek directly after that user instead of skipping an offset
+ */
+@Value
+public class PageCursor {
+  String property;
+  Sort.Direction direction;
+  Integer lastId;
+  String lastValue;
+
+  public String encode() {
+    String raw = property + ";" + direction + ";" + lastId + ";" + lastValue;
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static PageCursor decode(String cursor) {
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      String[] parts = raw.split(";", 4);
+      return new PageCursor(
+          parts[0], Sort.Direction.fromString(parts[1]), Integer.valueOf(parts[2]), parts[3]);
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Invalid page cursor", e);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.usermanagement.reactive.utilities;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
+
+/**
+ * Merges concurrent lookups of the same key into one: while a lookup is in flight, the other
+ * callers of that key subscribe to it instead of starting their own. The lookup is forgotten as
+ * soon as it completes, fails or is cancelled, so nothing is cached. An error is delivered to every
+ * caller and the next call tries again. A caller cancelling does not cancel the lookup for the
+ * others, the lookup is only cancelled once all its callers have.
+ *
+ * <p>A lookup runs outside of the transaction of the caller that started it, so it must only be
+ * used for reads that do not need to see the caller's own uncommitted writes
+ */
+public final class SingleFlight<K, V> {
+  private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+  public Mono<V> execute(K key, Function<K, Mono<V>> loader) {
+    return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> flight(k, loader.apply(k))));
+  }
+
+  /**
+   * Looks up many keys at once. Keys already in flight join those lookups, the others are loaded
+   * with a single call of the batch loader, which concurrent lookups of the same keys join in turn
+   *
+   * @param keyOf key of a value returned by the batch loader
+   */
+  public Flux<V> executeAll(
+      Collection<K> keys, Function<V, K> keyOf, Function<List<K>, Flux<V>> batchLoader) {
+    return Flux.defer(
+        () -> {
+          // Concurrent callers may join the flights as soon as they are registered, so the batch
+          // waits for the last missing key before it is loaded
+          List<K> missing = new ArrayList<>();
+          Sinks.One<List<K>> registered = Sinks.one();
+          Mono<Map<K, V>> batch =
+              new Shared<>(
+                      registered.asMono().flatMap(ids -> batchLoader.apply(ids).collectMap(keyOf)),
+                      () -> {})
+                  .mono;
+          List<Mono<V>> flights = new ArrayList<>(keys.size());
+          for (K key : keys)
+            flights.add(
+                inFlight.computeIfAbsent(
+                    key,
+                    k -> {
+                      missing.add(k);
+                      return flight(k, batch.flatMap(values -> Mono.justOrEmpty(values.get(k))));
+                    }));
+          registered.tryEmitValue(missing);
+          return Flux.mergeSequential(flights);
+        });
+  }
+
+  /** Lets the next calls of the key start a new lookup instead of joining the one in flight */
+  public void forget(K key) {
+    inFlight.remove(key);
+  }
+
+  /** Number of lookups currently in flight */
+  public int size() {
+    return inFlight.size();
+  }
+
+  private Mono<V> flight(K key, Mono<V> lookup) {
+    AtomicReference<Mono<V>> flight = new AtomicReference<>();
+    flight.set(new Shared<>(lookup, () -> inFlight.remove(key, flight.get())).mono);
+    return flight.get();
+  }
+
+  /**
+   * Subscribes to the source once for all its subscribers, and cancels it when the last of them
+   * cancels. Mono.share() keeps the source running in this version of Reactor
+   */
+  private static final class Shared<T> {
+    private final Mono<T> source;
+    private final Runnable onDone;
+    private final Sinks.One<T> result = Sinks.one();
+    private final Mono<T> mono;
+    private int subscribers;
+    private Disposable upstream;
+
+    Shared(Mono<T> source, Runnable onDone) {
+      // The source runs outside of the subscribers' transactions
+      this.source = source.contextWrite(context -> Context.empty()).doFinally(s -> onDone.run());
+      this.onDone = onDone;
+      this.mono = result.asMono().doOnSubscribe(s -> join()).doOnCancel(this::leave);
+    }
+
+    private synchronized void join() {
+      if (subscribers++ == 0 && upstream == null)
+        upstream =
+            source.subscribe(result::tryEmitValue, result::tryEmitError, result::tryEmitEmpty);
+    }
+
+    private void leave() {
+      Disposable cancelled;
+      synchronized (this) {
+        if (--subscribers > 0) return;
+        cancelled = upstream;
+        upstream = null;
+      }
+      onDone.run();
+      if (cancelled != null) cancelled.dispose();
+    }
+  }
+}
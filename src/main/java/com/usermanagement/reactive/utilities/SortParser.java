@@ -0,0 +1,32 @@
+package com.usermanagement.reactive.utilities;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import org.springframework.data.domain.Sort;
+
+/** Parses sort parameters such as "id;ASC,name;DESC" where the direction defaults to ascending */
+public final class SortParser {
+
+  private SortParser() {}
+
+  public static Sort parse(String[] sortBy, boolean ignoreCase) {
+    return Sort.by(
+        Arrays.stream(sortBy)
+            .map(sort -> sort.split(";", 2))
+            .map(
+                array -> {
+                  Sort.Order order =
+                      new Sort.Order(toDirection(array.length > 1 ? array[1] : "ASC"), array[0]);
+                  return ignoreCase ? order.ignoreCase() : order;
+                })
+            .collect(Collectors.toList()));
+  }
+
+  public static Sort.Direction toDirection(String sortDirection) {
+    if (sortDirection.equalsIgnoreCase("DESC")) {
+      return Sort.Direction.DESC;
+    } else {
+      return Sort.Direction.ASC;
+    }
+  }
+}
@@ -1,29 +1,69 @@
 package com.usermanagement.reactive.utilities;
 
-import java.util.Optional;
-import java.util.regex.Pattern;
-
+/**
+ * Cleans search text: apostrophes are removed, runs of punctuation and whitespace become a single
+ * space and the result is trimmed. null gives an empty string.
+ *
+ * <p>It runs on every search request, so the text is sanitized in a single pass driven by a lookup
+ * table of the characters, and is returned as is when there is nothing to clean
+ */
 public final class TextSanitizer {
-  private static Pattern spacePattern = Pattern.compile("\\s+");
-  private static Pattern apostrophePattern = Pattern.compile("['’’‘`]+");
-  private static Pattern punctuationPattern =
-      Pattern.compile("[!\"“”#$%()*�+,\\\\/:±;<【】=>?\\[\\]\\^™{|}~®（）一°]+");
+  private static final byte KEEP = 0, APOSTROPHE = 1, SEPARATOR = 2;
+  private static final String APOSTROPHES = "'’‘`";
+  private static final String PUNCTUATION = "!\"“”#$%()*�+,\\/:±;<【】=>?[]^™{|}~®（）一°";
+  private static final String WHITESPACE = " \t\n\u000B\f\r";
 
-  public static String sanitize(String text) {
-    return stripBadCharacters(text);
+  private static final byte[] TYPES = new byte[Character.MAX_VALUE + 1];
+
+  static {
+    for (char c : APOSTROPHES.toCharArray()) TYPES[c] = APOSTROPHE;
+    for (char c : PUNCTUATION.toCharArray()) TYPES[c] = SEPARATOR;
+    for (char c : WHITESPACE.toCharArray()) TYPES[c] = SEPARATOR;
   }
 
-  private static String stripBadCharacters(String text) {
-    return spacePattern
-        .matcher(
-            punctuationPattern
-                .matcher(apostrophePattern.matcher(nullCheck(text)).replaceAll(""))
-                .replaceAll(" "))
-        .replaceAll(" ")
-        .trim();
+  public static String sanitize(String text) {
+    if (text == null) return "";
+    int length = text.length();
+    int clean = cleanPrefix(text);
+    if (clean == length) return text;
+
+    char[] out = new char[length];
+    text.getChars(0, clean, out, 0);
+    int size = clean;
+    // A separator run is only written once the next kept character is reached
+    boolean separator = false;
+    if (size > 0 && out[size - 1] == ' ') {
+      size--;
+      separator = true;
+    }
+    for (int i = clean; i < length; i++) {
+      char c = text.charAt(i);
+      byte type = TYPES[c];
+      if (type == SEPARATOR) separator = true;
+      else if (type == KEEP) {
+        if (separator && size > 0) out[size++] = ' ';
+        separator = false;
+        out[size++] = c;
+      }
+    }
+
+    // Same as String.trim, other control characters can be left at both ends
+    int start = 0;
+    while (start < size && out[start] <= ' ') start++;
+    while (size > start && out[size - 1] <= ' ') size--;
+    return new String(out, start, size - start);
   }
 
-  private static String nullCheck(String query) {
-    return Optional.ofNullable(query).orElse("");
+  // Length of the beginning of the text that sanitizing leaves unchanged
+  private static int cleanPrefix(String text) {
+    int length = text.length();
+    if (length == 0) return 0;
+    if (text.charAt(0) <= ' ' || TYPES[text.charAt(0)] != KEEP) return 0;
+    for (int i = 1; i < length; i++) {
+      char c = text.charAt(i);
+      if (TYPES[c] == KEEP || (c == ' ' && text.charAt(i - 1) != ' ')) continue;
+      return i;
+    }
+    return text.charAt(length - 1) <= ' ' ? length - 1 : length;
   }
 }
@@ -0,0 +1,2 @@
+CREATE INDEX users_name_prefix ON users (name varchar_pattern_ops);
+CREATE INDEX users_email_prefix ON users (email varchar_pattern_ops);
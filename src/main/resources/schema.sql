@@ -1,4 +1,8 @@
 DROP TABLE IF EXISTS users ;
-CREATE TABLE users ( id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, name VARCHAR(100) NOT NULL, age integer,salary decimal, email VARCHAR(150) NOT NULL, CONSTRAINT email_unique UNIQUE (email) );
+CREATE TABLE users ( id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, name VARCHAR(100) NOT NULL, age integer,salary decimal, email VARCHAR(150) NOT NULL, version BIGINT NOT NULL DEFAULT 0, CONSTRAINT email_unique UNIQUE (email) );
+CREATE INDEX users_name_id ON users (name, id);
+CREATE INDEX users_age_id ON users (age, id);
+CREATE INDEX users_salary_id ON users (salary, id);
 DROP TABLE IF EXISTS department ;
-CREATE TABLE department ( id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,user_id integer, name VARCHAR(100) NOT NULL, loc VARCHAR(100));
\ No newline at end of file
+CREATE TABLE department ( id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,user_id integer, name VARCHAR(100) NOT NULL, loc VARCHAR(100));
+CREATE INDEX department_user_id ON department (user_id);
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.usermanagement.reactive.test.changes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.usermanagement.reactive.changes.UserChangeFeed;
+import com.usermanagement.reactive.dto.UserChangeEventDTO.Type;
+import com.usermanagement.reactive.model.User;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+/** Tests the in-process change feed without a Spring context */
+public class UserChangeFeedTest {
+  private final UserChangeFeed feed = new UserChangeFeed(4, 8);
+
+  private static User user(int id) {
+    return new User(id, "User " + id, 30, 1000, "user" + id + "@company.com");
+  }
+
+  @Test
+  public void newSubscribersStartFromTheCurrentSequence() {
+    feed.onCreated(user(1));
+    long[] current = new long[1];
+    StepVerifier.create(feed.subscribe(null))
+        .assertNext(
+            event -> {
+              assertEquals(Type.RESYNC, event.getType());
+              current[0] = event.getSequence();
+            })
+        .then(() -> feed.onCreated(user(2)))
+        .assertNext(event -> assertEquals(current[0] + 1, event.getSequence()))
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  public void subscribersReceiveLiveChangesInOrder() {
+    StepVerifier.create(feed.subscribe(null).skip(1))
+        .then(() -> feed.onCreated(user(1)))
+        .then(() -> feed.onUpdated(user(1), user(1)))
+        .then(() -> feed.onDeleted(user(1)))
+        .assertNext(event -> assertEquals(Type.CREATED, event.getType()))
+        .assertNext(event -> assertEquals(Type.UPDATED, event.getType()))
+        .assertNext(
+            event -> {
+              assertEquals(Type.DELETED, event.getType());
+              assertEquals(1, event.getUserId());
+            })
+        .thenCancel()
+        .verify();
+    assertEquals(0, feed.subscribers());
+  }
+
+  @Test
+  public void subscribersResumeAfterTheLastSequenceTheySaw() {
+    long[] first = new long[1];
+    StepVerifier.create(feed.subscribe(null).skip(1))
+        .then(() -> feed.onCreated(user(1)))
+        .consumeNextWith(event -> first[0] = event.getSequence())
+        .thenCancel()
+        .verify();
+    feed.onCreated(user(2));
+    feed.onCreated(user(3));
+
+    StepVerifier.create(feed.subscribe(first[0]))
+        .assertNext(event -> assertEquals(first[0] + 1, event.getSequence()))
+        .assertNext(event -> assertEquals(3, event.getUserId()))
+        .then(() -> feed.onCreated(user(4)))
+        .assertNext(event -> assertEquals(first[0] + 3, event.getSequence()))
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  public void subscribersWhoseChangesAreNotKeptAreToldToResync() {
+    long[] first = new long[1];
+    StepVerifier.create(feed.subscribe(null).skip(1))
+        .then(() -> feed.onCreated(user(1)))
+        .consumeNextWith(event -> first[0] = event.getSequence())
+        .thenCancel()
+        .verify();
+    // Only the last 4 changes are kept
+    for (int id = 2; id <= 6; id++) feed.onCreated(user(id));
+
+    StepVerifier.create(feed.subscribe(first[0]))
+        .assertNext(
+            event -> {
+              assertEquals(Type.RESYNC, event.getType());
+              assertEquals(first[0] + 5, event.getSequence());
+            })
+        .thenCancel()
+        .verify();
+    StepVerifier.create(feed.subscribe(0L))
+        .assertNext(event -> assertEquals(Type.RESYNC, event.getType()))
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  public void slowSubscribersAreDropped() {
+    StepVerifier.create(feed.subscribe(null).skip(1), 0)
+        .then(
+            () -> {
+              // The subscriber buffer holds 8 changes
+              for (int id = 1; id <= 9; id++) feed.onCreated(user(id));
+            })
+        .thenRequest(10)
+        .expectNextCount(8)
+        .verifyComplete();
+    assertEquals(0, feed.subscribers());
+  }
+}
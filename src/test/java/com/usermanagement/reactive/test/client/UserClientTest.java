@@ -0,0 +1,229 @@
+package com.usermanagement.reactive.test.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.usermanagement.reactive.client.UserClient;
+import com.usermanagement.reactive.model.User;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.test.StepVerifier;
+
+/** Runs UserClient against a stub server answering as each test needs */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@DirtiesContext
+@ActiveProfiles("test")
+public class UserClientTest {
+  private static final String USER =
+      "{\"id\":1,\"name\":\"Jordan Sun\",\"age\":30,\"salary\":10000,\"email\":\"jordansun@company.com\"}";
+
+  private static final AtomicInteger requests = new AtomicInteger();
+
+  private static volatile String ifNoneMatch;
+
+  private static volatile String accept;
+
+  private static volatile String contentType;
+
+  private static volatile BiFunction<Integer, HttpServerResponse, Publisher<Void>> handler;
+
+  private static final DisposableServer server =
+      HttpServer.create()
+          .port(0)
+          .handle(
+              (HttpServerRequest request, HttpServerResponse response) -> {
+                ifNoneMatch = request.requestHeaders().get("If-None-Match");
+                accept = request.requestHeaders().get("Accept");
+                contentType = request.requestHeaders().get("Content-Type");
+                return handler.apply(requests.incrementAndGet(), response);
+              })
+          .bindNow();
+
+  @DynamicPropertySource
+  static void clientProperties(DynamicPropertyRegistry registry) {
+    registry.add("app.client.base-url", () -> "http://localhost:" + server.port());
+    registry.add("app.client.retry.min-backoff", () -> "1ms");
+    registry.add("app.client.hedge.enabled", () -> "true");
+    registry.add("app.client.hedge.delay", () -> "200ms");
+    registry.add("app.client.deadline", () -> "2s");
+  }
+
+  @AfterAll
+  public static void stopServer() {
+    server.disposeNow();
+  }
+
+  @Autowired private UserClient userClient;
+
+  private static void respond(BiFunction<Integer, HttpServerResponse, Publisher<Void>> answer) {
+    requests.set(0);
+    handler = answer;
+  }
+
+  private static Publisher<Void> user(HttpServerResponse response) {
+    return response.header("Content-Type", "application/json").sendString(Mono.just(USER));
+  }
+
+  @Test
+  public void getUserIsRetriedOnServerErrors() {
+    respond((request, response) -> request == 1 ? response.status(503).send() : user(response));
+
+    StepVerifier.create(userClient.getUser("1"))
+        .expectNextMatches(user -> user.getName().equals("Jordan Sun"))
+        .verifyComplete();
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  public void getUserIsEmptyWhenNotFound() {
+    respond((request, response) -> response.status(404).send());
+
+    StepVerifier.create(userClient.getUser("1")).verifyComplete();
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void getUserIsHedgedWhenSlow() {
+    respond(
+        (request, response) ->
+            request == 1
+                ? Mono.delay(Duration.ofSeconds(3)).then(Mono.from(user(response)))
+                : user(response));
+
+    StepVerifier.create(userClient.getUser("1"))
+        .expectNextCount(1)
+        .expectComplete()
+        .verify(Duration.ofSeconds(2));
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  public void getAllUsersFailsWhenTheWholeCallOutlivesTheDeadline() {
+    // A user every 500ms, each within the deadline but not all of them
+    respond(
+        (request, response) ->
+            response
+                .header("Content-Type", "application/json")
+                .sendString(
+                    Flux.interval(Duration.ofMillis(500))
+                        .take(10)
+                        .map(i -> (i == 0 ? "[" : ",") + USER)
+                        .concatWith(Mono.just("]"))));
+
+    StepVerifier.create(userClient.getAllUsers())
+        .thenConsumeWhile(user -> true)
+        .expectError(TimeoutException.class)
+        .verify(Duration.ofSeconds(4));
+  }
+
+  @Test
+  public void createUserIsNotRetried() {
+    respond((request, response) -> response.status(503).send());
+
+    StepVerifier.create(
+            userClient.createUser(new User(null, "Jordan Sun", 30, 10000, "jordansun@company.com")))
+        .expectError(WebClientResponseException.ServiceUnavailable.class)
+        .verify();
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void getUserRevalidatesCachedUserWithETag() {
+    respond(
+        (request, response) ->
+            request == 1
+                ? user(response.header("ETag", "\"2-0\""))
+                : response.status(304).header("ETag", "\"2-0\"").send());
+
+    StepVerifier.create(userClient.getUser("2")).expectNextCount(1).verifyComplete();
+    assertNull(ifNoneMatch);
+    StepVerifier.create(userClient.getUser("2"))
+        .expectNextMatches(user -> user.getName().equals("Jordan Sun"))
+        .verifyComplete();
+    assertEquals("\"2-0\"", ifNoneMatch);
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  public void getAllUsersRevalidatesCachedUsersWithETag() {
+    respond(
+        (request, response) ->
+            request == 1
+                ? response
+                    .header("Content-Type", "application/json")
+                    .header("ETag", "\"all\"")
+                    .sendString(Mono.just("[" + USER + "]"))
+                : response.status(304).header("ETag", "\"all\"").send());
+
+    StepVerifier.create(userClient.getAllUsers()).expectNextCount(1).verifyComplete();
+    StepVerifier.create(userClient.getAllUsers())
+        .expectNextMatches(user -> user.getName().equals("Jordan Sun"))
+        .verifyComplete();
+    assertEquals("\"all\"", ifNoneMatch);
+  }
+
+  @Test
+  public void getUserAcceptsSmile() throws IOException {
+    byte[] smile =
+        new ObjectMapper(new SmileFactory()).writeValueAsBytes(new ObjectMapper().readTree(USER));
+    respond(
+        (request, response) ->
+            response
+                .header("Content-Type", "application/x-jackson-smile")
+                .sendByteArray(Mono.just(smile)));
+
+    StepVerifier.create(userClient.getUser("3"))
+        .expectNextMatches(user -> user.getEmail().equals("jordansun@company.com"))
+        .verifyComplete();
+    assertEquals("application/x-jackson-smile, application/json;q=0.9", accept);
+  }
+
+  @Test
+  public void createUserFallsBackToJsonWhenSmileIsNotSupported() {
+    respond(
+        (request, response) ->
+            contentType.startsWith("application/x-jackson-smile")
+                ? response.status(415).send()
+                : user(response.status(201)));
+
+    StepVerifier.create(
+            userClient.createUser(new User(null, "Jordan Sun", 30, 10000, "jordansun@company.com")))
+        .expectNextMatches(user -> user.getId().equals(1))
+        .verifyComplete();
+    assertEquals(2, requests.get());
+    assertEquals("application/json", contentType);
+
+    // The next users are sent as JSON right away
+    respond((request, response) -> user(response.status(201)));
+    StepVerifier.create(
+            userClient.createUser(new User(null, "Ada Lovelace", 36, 5000, "ada@company.com")))
+        .expectNextCount(1)
+        .verifyComplete();
+    assertEquals(1, requests.get());
+    assertEquals("application/json", contentType);
+  }
+}
@@ -0,0 +1,223 @@
+package com.usermanagement.reactive.test.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.usermanagement.reactive.cache.UserCache;
+import com.usermanagement.reactive.config.ReplicaRoutingConnectionFactory;
+import com.usermanagement.reactive.dto.UserPatchDTO;
+import com.usermanagement.reactive.model.User;
+import com.usermanagement.reactive.service.UserService;
+import io.r2dbc.spi.ConnectionFactories;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+/**
+ * Read/write splitting between the H2 database of the test profile and a second one standing for a
+ * replica, which the writes never reach as nothing replicates them
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "app.r2dbc.replicas.urls=" + ReplicaRoutingTest.REPLICA_URL)
+@DirtiesContext
+@AutoConfigureWebTestClient
+@ActiveProfiles({"test", "netty"})
+public class ReplicaRoutingTest {
+  static final String REPLICA_URL =
+      "r2dbc:h2:mem:///replica?options=DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+
+  private final DatabaseClient replica =
+      DatabaseClient.create(ConnectionFactories.get(REPLICA_URL));
+
+  @Autowired private WebTestClient webTestClient;
+
+  @Autowired private DatabaseClient databaseClient;
+
+  @Autowired private UserCache userCache;
+
+  @Autowired private UserService userService;
+
+  @BeforeEach
+  public void setup() {
+    setup(databaseClient, "Primary User");
+    setup(replica, "Replica User");
+    userCache.invalidateAll();
+  }
+
+  private static void setup(DatabaseClient database, String name) {
+    List<String> statements =
+        Arrays.asList(
+            "DROP TABLE IF EXISTS users ;",
+            "CREATE TABLE users ( id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, name VARCHAR(100) NOT NULL, age integer,salary decimal, email VARCHAR(150) NOT NULL, version BIGINT NOT NULL DEFAULT 0, CONSTRAINT email_unique UNIQUE (email));",
+            "INSERT INTO users (name, age, salary, email) VALUES ('"
+                + name
+                + "', 30, 1000, 'user@company.com')");
+    statements.forEach(it -> database.sql(it).fetch().rowsUpdated().block());
+  }
+
+  private static Mono<Integer> count(DatabaseClient database) {
+    return database
+        .sql("SELECT COUNT(*) FROM users")
+        .map(row -> row.get(0, Number.class).intValue())
+        .one();
+  }
+
+  @Test
+  public void readsGoToTheReplica() {
+    webTestClient
+        .get()
+        .uri("/v1/users/1")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.name")
+        .isEqualTo("Replica User");
+    webTestClient
+        .get()
+        .uri("/v1/users/all")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.content[0].name")
+        .isEqualTo("Replica User")
+        .jsonPath("$.totalElements")
+        .isEqualTo(1);
+    webTestClient
+        .get()
+        .uri("/v1/users/page?count=true")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.content[0].name")
+        .isEqualTo("Replica User");
+  }
+
+  @Test
+  public void writesGoToThePrimary() {
+    webTestClient
+        .post()
+        .uri("/v1/users")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new User(null, "Ada Lovelace", 36, 5000, "ada@company.com"))
+        .exchange()
+        .expectStatus()
+        .isCreated();
+    webTestClient
+        .patch()
+        .uri("/v1/users/1")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"age\": 31}")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.name")
+        .isEqualTo("Primary User");
+
+    assertEquals(2, count(databaseClient).block());
+    assertEquals(1, count(replica).block());
+  }
+
+  @Test
+  public void writtenUsersAreNotReadBackFromTheReplica() {
+    webTestClient
+        .patch()
+        .uri("/v1/users/1")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"age\": 31}")
+        .exchange()
+        .expectStatus()
+        .isOk();
+    webTestClient
+        .get()
+        .uri("/v1/users/1")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.name")
+        .isEqualTo("Primary User")
+        .jsonPath("$.age")
+        .isEqualTo(31);
+
+    webTestClient.delete().uri("/v1/users/1").exchange().expectStatus().is2xxSuccessful();
+    webTestClient.get().uri("/v1/users/1").exchange().expectStatus().isNotFound();
+  }
+
+  @Test
+  public void requestsReadTheirOwnWrites() {
+    Mono<Void> write =
+        userService
+            .patchUser(1, new UserPatchDTO(null, 31, null, null, null))
+            // The written user may have left the cache by the time it is read again
+            .then(Mono.fromRunnable(userCache::invalidateAll));
+
+    StepVerifier.create(
+            write
+                .then(userService.findById(1))
+                .contextWrite(ReplicaRoutingConnectionFactory::readYourWrites))
+        .assertNext(
+            user -> {
+              assertEquals("Primary User", user.getName());
+              assertEquals(31, user.getAge());
+            })
+        .verifyComplete();
+    StepVerifier.create(
+            write
+                .thenMany(userService.fetchUsers(Collections.singletonList(1)))
+                .contextWrite(ReplicaRoutingConnectionFactory::readYourWrites))
+        .assertNext(user -> assertEquals("Primary User", user.getName()))
+        .verifyComplete();
+
+    // Other requests keep reading the replica
+    StepVerifier.create(
+            userService
+                .fetchUsers(Collections.singletonList(1))
+                .contextWrite(ReplicaRoutingConnectionFactory::readYourWrites))
+        .assertNext(user -> assertEquals("Replica User", user.getName()))
+        .verifyComplete();
+  }
+
+  @Test
+  public void readsFollowingAWriteStayOnThePrimary() {
+    Mono<String> read = name(true);
+    Mono<String> write = name(false);
+
+    StepVerifier.create(read.concatWith(write).concatWith(read))
+        .expectNext("Replica User", "Primary User", "Replica User")
+        .verifyComplete();
+    StepVerifier.create(
+            read.concatWith(write)
+                .concatWith(read)
+                .contextWrite(ReplicaRoutingConnectionFactory::readYourWrites))
+        .expectNext("Replica User", "Primary User", "Primary User")
+        .verifyComplete();
+  }
+
+  // Name of the user read on a connection acquired for read-only work or not
+  private Mono<String> name(boolean readOnly) {
+    return databaseClient
+        .sql("SELECT name FROM users WHERE id = 1")
+        .map(row -> row.get(0, String.class))
+        .one()
+        .contextWrite(context -> ReplicaRoutingConnectionFactory.readOnly(context, readOnly));
+  }
+}
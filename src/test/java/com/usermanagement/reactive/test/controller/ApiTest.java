@@ -1,27 +1,53 @@
 package com.usermanagement.reactive.test.controller;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.usermanagement.reactive.cache.UserCache;
+import com.usermanagement.reactive.config.QueryMetricsListener;
+import com.usermanagement.reactive.dto.UserChangeEventDTO;
+import com.usermanagement.reactive.dto.UserCursorPageDTO;
+import com.usermanagement.reactive.dto.UserImportResultDTO;
 import com.usermanagement.reactive.model.User;
 import com.usermanagement.reactive.repository.UserRepository;
+import com.usermanagement.reactive.stats.UserStatistics;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
 // import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.StreamUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
 /** WebTestClient is used to test the Rest API */
@@ -29,16 +55,25 @@ import reactor.test.StepVerifier;
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @DirtiesContext
 @AutoConfigureWebTestClient
+@AutoConfigureMetrics
 @ActiveProfiles("test")
 @Slf4j
 public class ApiTest {
 
   @Autowired private WebTestClient webTestClient;
 
+  @LocalServerPort private int port;
+
   @Autowired private UserRepository userRepository;
 
   @Autowired private DatabaseClient databaseClient;
 
+  @Autowired private UserCache userCache;
+
+  @Autowired private UserStatistics userStatistics;
+
+  @Autowired private MeterRegistry meterRegistry;
+
   private List<User> getData() {
     return Arrays.asList(
         new User(null, "Jordan Sun", 30, 10000, "jordansun@company.com"),
@@ -62,8 +97,9 @@ public class ApiTest {
   public void setup() {
     List<String> statements =
         Arrays.asList(
+            "DELETE FROM department ;",
             "DROP TABLE IF EXISTS users ;",
-            "CREATE TABLE users ( id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, name VARCHAR(100) NOT NULL, age integer,salary decimal, email VARCHAR(150) NOT NULL, CONSTRAINT email_unique UNIQUE (email));");
+            "CREATE TABLE users ( id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, name VARCHAR(100) NOT NULL, age integer,salary decimal, email VARCHAR(150) NOT NULL, version BIGINT NOT NULL DEFAULT 0, CONSTRAINT email_unique UNIQUE (email));");
 
     // statements.forEach(it -> databaseClient.execute(it)
     statements.forEach(it -> databaseClient.sql(it).fetch().rowsUpdated().block());
@@ -77,6 +113,8 @@ public class ApiTest {
               System.out.println("User Inserted from UserControllerTest: " + user);
             })
         .blockLast();
+    userCache.invalidateAll();
+    userStatistics.seed().block();
   }
 
   @Test
@@ -117,6 +155,43 @@ public class ApiTest {
     StepVerifier.create(userFlux.log("Receiving values !!!")).expectNextCount(15).verifyComplete();
   }
 
+  @Test
+  public void streamAllUsersAsNdjson() {
+    Flux<User> userFlux =
+        webTestClient
+            .get()
+            .uri("/v1/users")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+            .returnResult(User.class)
+            .getResponseBody();
+    StepVerifier.create(userFlux).expectNextCount(15).verifyComplete();
+  }
+
+  @Test
+  public void streamAllUsersAsServerSentEvents() {
+    Flux<User> userFlux =
+        webTestClient
+            .get()
+            .uri("/v1/users")
+            .accept(MediaType.TEXT_EVENT_STREAM)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+            .returnResult(User.class)
+            .getResponseBody();
+    StepVerifier.create(userFlux)
+        .expectNextMatches(user -> user.getId() == 1)
+        .expectNextCount(14)
+        .verifyComplete();
+  }
+
   @Test
   public void getUserById() {
     webTestClient
@@ -159,6 +234,83 @@ public class ApiTest {
         .isEqualTo("arascruise@company.com");
   }
 
+  @Test
+  public void createUsersInBatch() {
+    List<User> users =
+        Arrays.asList(
+            new User(null, "Aras Cruise", 45, 555555, "arascruise@company.com"),
+            new User(null, "Jordan Sun", 30, 10000, "jordansun@company.com"),
+            new User(null, "Invalid Email", 30, 10000, "not-a-valid-email-address"),
+            new User(null, "Mira Stone", 28, 42000, "mirastone@company.com"));
+    webTestClient
+        .post()
+        .uri("/v1/users/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(users)
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.created")
+        .isEqualTo(2)
+        .jsonPath("$.failed")
+        .isEqualTo(2)
+        .jsonPath("$.rows[0].id")
+        .isNotEmpty()
+        .jsonPath("$.rows[1].error")
+        .isEqualTo("email_unique")
+        .jsonPath("$.rows[2].error")
+        .isEqualTo("Email should be valid")
+        .jsonPath("$.rows[3].id")
+        .isNotEmpty();
+  }
+
+  @Test
+  public void createUsersInBatchFromNdjson() {
+    String users =
+        "{\"name\":\"Aras Cruise\",\"age\":45,\"salary\":555555,\"email\":\"arascruise@company.com\"}\n"
+            + "{\"name\":\"Mira Stone\",\"age\":28,\"salary\":42000,\"email\":\"mirastone@company.com\"}\n";
+    webTestClient
+        .post()
+        .uri("/v1/users/batch")
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .bodyValue(users)
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.created")
+        .isEqualTo(2)
+        .jsonPath("$.rows[1].id")
+        .isEqualTo(17);
+  }
+
+  @Test
+  public void createUsersInBatchFromNdjson_malformedLine() {
+    String users =
+        "{\"name\":\"Aras Cruise\",\"age\":45,\"salary\":555555,\"email\":\"arascruise@company.com\"}\n"
+            + "\n"
+            + "{not json}\n"
+            + "{\"name\":\"Mira Stone\",\"age\":28,\"salary\":42000,\"email\":\"mirastone@company.com\"}";
+    webTestClient
+        .post()
+        .uri("/v1/users/batch")
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .bodyValue(users)
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.created")
+        .isEqualTo(2)
+        .jsonPath("$.failed")
+        .isEqualTo(1)
+        .jsonPath("$.rows[1].error")
+        .isEqualTo("Malformed user")
+        .jsonPath("$.rows[2].id")
+        .isNotEmpty();
+  }
+
   @Test
   public void deleteUser() {
     webTestClient
@@ -192,6 +344,396 @@ public class ApiTest {
         .isEqualTo(newSalary);
   }
 
+  @Test
+  public void importUsersFromCsvUpsertsOnEmail() {
+    String csv =
+        "email,name,age,salary\n"
+            + "jordansun@company.com,Jordan Sun,31,20000\n"
+            + "mira@company.com,\"Stone, Mira\",28,42000\n"
+            + "\n"
+            + "not-an-email,Bad Email,30,1000\n"
+            + "old@company.com,Too Old,200,1000\n"
+            + "kid@company.com,Kid,ten,0\n"
+            + "mira@company.com,Mira Stone,29,43000\n";
+    // Cached before the import
+    webTestClient.get().uri("/v1/users/1").exchange().expectStatus().isOk();
+    webTestClient
+        .post()
+        .uri("/v1/users/import")
+        .contentType(MediaType.valueOf("text/csv"))
+        .bodyValue(csv)
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.rows")
+        .isEqualTo(6)
+        .jsonPath("$.imported")
+        .isEqualTo(3)
+        .jsonPath("$.failed")
+        .isEqualTo(3)
+        .jsonPath("$.done")
+        .isEqualTo(true)
+        .jsonPath("$.errors[0].line")
+        .isEqualTo(5)
+        .jsonPath("$.errors[0].error")
+        .isEqualTo("Email should be valid")
+        .jsonPath("$.errors[1].error")
+        .isEqualTo("Age should not be greater than 150")
+        .jsonPath("$.errors[2].line")
+        .isEqualTo(7)
+        .jsonPath("$.errors[2].error")
+        .isEqualTo("Age should be a number");
+
+    User jordan = userRepository.findById(1).block();
+    assertEquals(20000, jordan.getSalary());
+    assertEquals(1, jordan.getVersion());
+    // The cache holds the imported version
+    webTestClient
+        .get()
+        .uri("/v1/users/1")
+        .exchange()
+        .expectBody()
+        .jsonPath("$.salary")
+        .isEqualTo(20000.0);
+    assertEquals(16, userRepository.count().block());
+    // The last row of an email wins, and derived state sees the imported users
+    webTestClient
+        .get()
+        .uri("/v1/users/search?email=mira@company.com")
+        .exchange()
+        .expectBody()
+        .jsonPath("$[0].name")
+        .isEqualTo("Mira Stone")
+        .jsonPath("$[0].age")
+        .isEqualTo(29);
+    assertEquals(16, userStatistics.snapshot().getCount());
+  }
+
+  @Test
+  public void importUsersFromNdjsonReportsProgress() {
+    StringBuilder ndjson = new StringBuilder();
+    for (int i = 0; i < 2500; i++)
+      ndjson
+          .append("{\"name\":\"Imported ")
+          .append(i)
+          .append("\",\"age\":30,\"salary\":1000,\"email\":\"imported")
+          .append(i)
+          .append("@company.com\"}\n");
+    ndjson.append("{not json}\n");
+    List<UserImportResultDTO> progress =
+        webTestClient
+            .post()
+            .uri("/v1/users/import")
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .accept(MediaType.APPLICATION_NDJSON)
+            .bodyValue(ndjson.toString())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(UserImportResultDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block();
+    // One progress per batch of 1000, then the summary
+    assertEquals(4, progress.size());
+    UserImportResultDTO summary = progress.get(3);
+    assertTrue(summary.isDone());
+    assertEquals(2500, summary.getImported());
+    assertEquals(1, summary.getFailed());
+    assertEquals("Malformed user", summary.getErrors().get(0).getError());
+    assertEquals(2515, userRepository.count().block());
+  }
+
+  @Test
+  public void importUsersRequiresCsvColumns() {
+    webTestClient
+        .post()
+        .uri("/v1/users/import")
+        .contentType(MediaType.valueOf("text/csv"))
+        .bodyValue("name,salary\nJohn,10\n")
+        .exchange()
+        .expectStatus()
+        .isBadRequest();
+  }
+
+  @Test
+  public void exportUsersAsCsv() {
+    userRepository.save(new User(null, "Stone, \"Mira\"", 28, 42000, "mira@company.com")).block();
+    String csv =
+        webTestClient
+            .get()
+            .uri("/v1/users/export.csv")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .contentTypeCompatibleWith(MediaType.valueOf("text/csv"))
+            .expectHeader()
+            .valueEquals(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.csv\"")
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody();
+    String[] lines = csv.split("\n");
+    assertEquals(17, lines.length);
+    assertEquals("id,name,age,salary,email,version", lines[0]);
+    assertEquals("1,Jordan Sun,30,10000.0,jordansun@company.com,0", lines[1]);
+    assertEquals("16,\"Stone, \"\"Mira\"\"\",28,42000.0,mira@company.com,0", lines[16]);
+  }
+
+  @Test
+  public void exportUsersAsGzippedCsv() throws IOException {
+    // Responses smaller than server.compression.min-response-size are not compressed
+    List<User> users = new ArrayList<>();
+    for (int i = 0; i < 100; i++)
+      users.add(new User(null, "Exported " + i, 30, 1000, "exported" + i + "@company.com"));
+    userRepository.saveAll(users).blockLast();
+    // WebTestClient inflates gzipped responses by itself, so the raw response is read instead
+    HttpURLConnection connection =
+        (HttpURLConnection)
+            new URL("http://localhost:" + port + "/v1/users/export.csv").openConnection();
+    connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    assertEquals(200, connection.getResponseCode());
+    assertEquals("gzip", connection.getContentEncoding());
+    ByteArrayOutputStream csv = new ByteArrayOutputStream();
+    try (GZIPInputStream in = new GZIPInputStream(connection.getInputStream())) {
+      StreamUtils.copy(in, csv);
+    }
+    String[] lines = csv.toString("UTF-8").split("\n");
+    assertEquals(116, lines.length);
+    assertEquals("115,Exported 99,30,1000.0,exported99@company.com,0", lines[115]);
+  }
+
+  @Test
+  public void streamUserChanges() {
+    Flux<UserChangeEventDTO> changes =
+        webTestClient
+            .get()
+            .uri("/v1/users/changes")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(UserChangeEventDTO.class)
+            .getResponseBody();
+    // The stream starts with a RESYNC, the writes come after. They block, so they run apart from
+    // the event loop delivering the stream
+    Runnable writes =
+        () -> {
+          webTestClient.delete().uri("/v1/users/{userId}", 2).exchange().expectStatus().isOk();
+          webTestClient
+              .post()
+              .uri("/v1/users/import")
+              .contentType(MediaType.valueOf("text/csv"))
+              .bodyValue("name,age,email\nGrace Hopper,85,grace@company.com\n")
+              .exchange()
+              .expectStatus()
+              .isOk();
+        };
+    StepVerifier.create(changes)
+        .assertNext(event -> assertEquals(UserChangeEventDTO.Type.RESYNC, event.getType()))
+        .then(() -> Schedulers.boundedElastic().schedule(writes))
+        .assertNext(
+            event -> {
+              assertEquals(UserChangeEventDTO.Type.DELETED, event.getType());
+              assertEquals("satoshi@company.com", event.getUser().getEmail());
+            })
+        .assertNext(event -> assertEquals(UserChangeEventDTO.Type.RESYNC, event.getType()))
+        .thenCancel()
+        .verify(Duration.ofSeconds(10));
+  }
+
+  @Test
+  public void getUserIsNotModifiedWhileItsETagMatches() {
+    String etag =
+        webTestClient
+            .get()
+            .uri("/v1/users/{userId}", 4)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(User.class)
+            .getResponseHeaders()
+            .getETag();
+    assertEquals("\"4-0\"", etag);
+    webTestClient
+        .get()
+        .uri("/v1/users/{userId}", 4)
+        .header(HttpHeaders.IF_NONE_MATCH, etag)
+        .exchange()
+        .expectStatus()
+        .isNotModified()
+        .expectHeader()
+        .valueEquals(HttpHeaders.ETAG, etag)
+        .expectBody()
+        .isEmpty();
+
+    webTestClient
+        .patch()
+        .uri("/v1/users/{userId}", 4)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"age\": 21}")
+        .exchange()
+        .expectStatus()
+        .isOk();
+    webTestClient
+        .get()
+        .uri("/v1/users/{userId}", 4)
+        .header(HttpHeaders.IF_NONE_MATCH, etag)
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectHeader()
+        .valueEquals(HttpHeaders.ETAG, "\"4-1\"");
+  }
+
+  @Test
+  public void userListsAreNotModifiedWhileTheirETagMatches() {
+    for (String uri : Arrays.asList("/v1/users", "/v1/users/all?page=0&size=5")) {
+      String etag =
+          webTestClient
+              .get()
+              .uri(uri)
+              .exchange()
+              .expectStatus()
+              .isOk()
+              .returnResult(User.class)
+              .getResponseHeaders()
+              .getETag();
+      webTestClient
+          .get()
+          .uri(uri)
+          .header(HttpHeaders.IF_NONE_MATCH, etag)
+          .exchange()
+          .expectStatus()
+          .isNotModified();
+
+      webTestClient
+          .patch()
+          .uri("/v1/users/{userId}", 2)
+          .contentType(MediaType.APPLICATION_JSON)
+          .bodyValue("{\"salary\": " + (uri.length() * 100) + "}")
+          .exchange()
+          .expectStatus()
+          .isOk();
+      webTestClient
+          .get()
+          .uri(uri)
+          .header(HttpHeaders.IF_NONE_MATCH, etag)
+          .exchange()
+          .expectStatus()
+          .isOk();
+    }
+  }
+
+  @Test
+  public void updateUserWithStaleVersionIsRejected() {
+    User user = userRepository.findById(1).block();
+    user.setSalary(2000);
+    webTestClient
+        .put()
+        .uri("/v1/users/{userId}", 1)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(user)
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.version")
+        .isEqualTo(user.getVersion() + 1);
+
+    // The same version again, the user has changed since
+    user.setSalary(3000);
+    webTestClient
+        .put()
+        .uri("/v1/users/{userId}", 1)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(user)
+        .exchange()
+        .expectStatus()
+        .isEqualTo(HttpStatus.CONFLICT);
+    assertEquals(2000, userRepository.findById(1).block().getSalary());
+  }
+
+  @Test
+  public void patchUserUpdatesTheGivenFieldsOnly() {
+    User user = userRepository.findById(3).block();
+    webTestClient
+        .patch()
+        .uri("/v1/users/{userId}", 3)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"salary\": 4242, \"version\": " + user.getVersion() + "}")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.salary")
+        .isEqualTo(4242.0)
+        .jsonPath("$.name")
+        .isEqualTo(user.getName())
+        .jsonPath("$.version")
+        .isEqualTo(user.getVersion() + 1);
+    User patched = userRepository.findById(3).block();
+    assertEquals(4242, patched.getSalary());
+    assertEquals(user.getAge(), patched.getAge());
+    assertEquals(user.getEmail(), patched.getEmail());
+
+    webTestClient
+        .patch()
+        .uri("/v1/users/{userId}", 3)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"age\": 50, \"version\": " + user.getVersion() + "}")
+        .exchange()
+        .expectStatus()
+        .isEqualTo(HttpStatus.CONFLICT);
+    webTestClient
+        .patch()
+        .uri("/v1/users/{userId}", 3)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"age\": 500}")
+        .exchange()
+        .expectStatus()
+        .isBadRequest();
+    webTestClient
+        .patch()
+        .uri("/v1/users/{userId}", 6500)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"age\": 50}")
+        .exchange()
+        .expectStatus()
+        .isNotFound();
+  }
+
+  @Test
+  public void updateUserRefreshesCachedUser() {
+    webTestClient
+        .get()
+        .uri("/v1/users/{userId}", 2)
+        .exchange()
+        .expectBody()
+        .jsonPath("$.name")
+        .isEqualTo("Satoshi Nakamoto");
+
+    User user = userRepository.findById(2).block();
+    user.setName("Hal Finney");
+    webTestClient
+        .put()
+        .uri("/v1/users/{userId}", 2)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(user)
+        .exchange()
+        .expectStatus()
+        .isOk();
+
+    webTestClient
+        .get()
+        .uri("/v1/users/{userId}", 2)
+        .exchange()
+        .expectBody()
+        .jsonPath("$.name")
+        .isEqualTo("Hal Finney");
+  }
+
   @Test
   public void updateUserName() {
     String newName = "Samona Dasel";
@@ -309,6 +851,314 @@ public class ApiTest {
         .isEqualTo(true);
   }
 
+  @Test
+  public void testKeysetPagination() {
+    List<User> users = new ArrayList<>();
+    String after = null;
+    do {
+      String cursor = after;
+      UserCursorPageDTO page =
+          webTestClient
+              .get()
+              .uri(
+                  uriBuilder ->
+                      uriBuilder
+                          .path("/v1/users/page")
+                          .queryParam("size", 4)
+                          .queryParam("sort", "age;DESC")
+                          .queryParamIfPresent("after", Optional.ofNullable(cursor))
+                          .build())
+              .exchange()
+              .expectStatus()
+              .isOk()
+              .expectBody(UserCursorPageDTO.class)
+              .returnResult()
+              .getResponseBody();
+      assertNull(page.getTotalElements());
+      users.addAll(page.getContent());
+      after = page.getNext();
+    } while (after != null);
+
+    assertEquals(15, users.size());
+    for (int i = 1; i < users.size(); i++) {
+      User previous = users.get(i - 1);
+      User current = users.get(i);
+      assertTrue(
+          previous.getAge() > current.getAge()
+              || (previous.getAge() == current.getAge() && previous.getId() > current.getId()));
+    }
+  }
+
+  @Test
+  public void testKeysetPaginationWithCount() {
+    webTestClient
+        .get()
+        .uri("/v1/users/page?size=5&sort=name;ASC&count=true")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.content[0].name")
+        .isEqualTo("Albert Einstein")
+        .jsonPath("$.totalElements")
+        .isEqualTo(15)
+        .jsonPath("$.next")
+        .isNotEmpty();
+  }
+
+  @Test
+  public void testKeysetPagination_badSort() {
+    webTestClient
+        .get()
+        .uri("/v1/users/page?sort=password;ASC")
+        .exchange()
+        .expectStatus()
+        .isBadRequest();
+  }
+
+  @Test
+  public void testKeysetPagination_emptyPage() {
+    webTestClient.get().uri("/v1/users/page?size=0").exchange().expectStatus().isBadRequest();
+    webTestClient.get().uri("/v1/users/page?size=-1").exchange().expectStatus().isBadRequest();
+  }
+
+  @Test
+  public void testKeysetPagination_pageTooLarge() {
+    webTestClient.get().uri("/v1/users/page?size=1001").exchange().expectStatus().isBadRequest();
+  }
+
+  @Test
+  public void queryUsersWithFilters() {
+    webTestClient
+        .get()
+        .uri("/v1/users/query?minAge=35&maxAge=45&minSalary=10000&sort=age;DESC,id;ASC&limit=3")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.length()")
+        .isEqualTo(3)
+        .jsonPath("$.[0].name")
+        .isEqualTo("Bruma Randy")
+        .jsonPath("$.[1].name")
+        .isEqualTo("Vitalik Bullet")
+        .jsonPath("$.[2].name")
+        .isEqualTo("Felipe Melo");
+  }
+
+  @Test
+  public void queryUsersByPrefixAndIds() {
+    webTestClient
+        .get()
+        .uri("/v1/users/query?namePrefix=M&ids=5,6,8,14")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.length()")
+        .isEqualTo(2)
+        .jsonPath("$.[0].name")
+        .isEqualTo("Martin Mangan")
+        .jsonPath("$.[1].name")
+        .isEqualTo("Michael Jordan");
+  }
+
+  @Test
+  public void queryUsers_badLimit() {
+    webTestClient
+        .get()
+        .uri("/v1/users/query?limit=100000")
+        .exchange()
+        .expectStatus()
+        .isBadRequest();
+  }
+
+  @Test
+  public void getStats() {
+    webTestClient
+        .get()
+        .uri("/v1/users/stats")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.exact")
+        .isEqualTo(false)
+        .jsonPath("$.count")
+        .isEqualTo(15)
+        .jsonPath("$.ageHistogram.30-39")
+        .isEqualTo(5)
+        .jsonPath("$.minSalary")
+        .value(closeTo(1000))
+        .jsonPath("$.maxSalary")
+        .value(closeTo(1000000))
+        .jsonPath("$.salaryPercentiles.p50")
+        .value(closeTo(10000));
+  }
+
+  @Test
+  public void getStatsFollowsWrites() {
+    User user = new User(null, "Aras Cruise", 45, 2000000, "arascruise@company.com");
+    webTestClient
+        .post()
+        .uri("/v1/users")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(user)
+        .exchange()
+        .expectStatus()
+        .isCreated();
+    webTestClient.delete().uri("/v1/users/{userId}", 2).exchange().expectStatus().isOk();
+
+    webTestClient
+        .get()
+        .uri("/v1/users/stats")
+        .exchange()
+        .expectBody()
+        .jsonPath("$.count")
+        .isEqualTo(15)
+        .jsonPath("$.ageHistogram.0-9")
+        .doesNotExist()
+        .jsonPath("$.maxSalary")
+        .value(closeTo(2000000));
+  }
+
+  @Test
+  public void getExactStats() {
+    webTestClient
+        .get()
+        .uri("/v1/users/stats?exact=true")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.exact")
+        .isEqualTo(true)
+        .jsonPath("$.count")
+        .isEqualTo(15)
+        .jsonPath("$.ageHistogram.30-39")
+        .isEqualTo(5)
+        .jsonPath("$.minSalary")
+        .isEqualTo(1000.0)
+        .jsonPath("$.maxSalary")
+        .isEqualTo(1000000.0)
+        .jsonPath("$.salaryPercentiles.p50")
+        .isEqualTo(10000.0);
+  }
+
+  // Estimated statistics are within 1% of the exact value
+  private static org.hamcrest.Matcher<Double> closeTo(double expected) {
+    return org.hamcrest.Matchers.closeTo(expected, expected * 0.01);
+  }
+
+  @Test
+  public void fetchUsersByIds() {
+    webTestClient
+        .post()
+        .uri("/v1/users/search/id")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(Arrays.asList(3, 1, 3, 999))
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectHeader()
+        .valueEquals("X-Missing-Ids", "999")
+        .expectBody()
+        .jsonPath("$.length()")
+        .isEqualTo(2)
+        .jsonPath("$.[0].id")
+        .isEqualTo(3)
+        .jsonPath("$.[1].id")
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void fetchUsersByIdsAsSmile() throws IOException {
+    MediaType smile = MediaType.valueOf("application/x-jackson-smile");
+    ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+    byte[] body =
+        webTestClient
+            .post()
+            .uri("/v1/users/search/id")
+            .contentType(smile)
+            .accept(smile)
+            .bodyValue(smileMapper.writeValueAsBytes(Arrays.asList(3, 1)))
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .contentType(smile)
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+    List<User> users = smileMapper.readValue(body, new TypeReference<List<User>>() {});
+    assertEquals(2, users.size());
+    assertEquals("Vitalik Bullet", users.get(0).getName());
+    assertEquals("Jordan Sun", users.get(1).getName());
+  }
+
+  @Test
+  public void fetchUserAndDepartment() {
+    databaseClient
+        .sql("INSERT INTO department (name, user_id, loc) VALUES ('Engineering', 1, 'Berlin')")
+        .fetch()
+        .rowsUpdated()
+        .block();
+    webTestClient
+        .get()
+        .uri("/v1/users/{userId}/department", 1)
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.userName")
+        .isEqualTo("Jordan Sun")
+        .jsonPath("$.salary")
+        .isEqualTo(10000.0)
+        .jsonPath("$.departmentName")
+        .isEqualTo("Engineering")
+        .jsonPath("$.loc")
+        .isEqualTo("Berlin");
+  }
+
+  @Test
+  public void fetchUserWithoutDepartment() {
+    webTestClient
+        .get()
+        .uri("/v1/users/{userId}/department", 2)
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.userName")
+        .isEqualTo("Satoshi Nakamoto")
+        .jsonPath("$.departmentId")
+        .doesNotExist();
+  }
+
+  @Test
+  public void fetchUsersAndDepartments() {
+    databaseClient
+        .sql("INSERT INTO department (name, user_id, loc) VALUES ('Marketing', 3, 'Cleveland')")
+        .fetch()
+        .rowsUpdated()
+        .block();
+    webTestClient
+        .post()
+        .uri("/v1/users/departments")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(Arrays.asList(3, 2, 999))
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.length()")
+        .isEqualTo(2)
+        .jsonPath("$.[0].userId")
+        .isEqualTo(2)
+        .jsonPath("$.[1].departmentName")
+        .isEqualTo("Marketing");
+  }
+
   @Test
   public void searchByEmailExactMatch() {
     webTestClient
@@ -347,4 +1197,79 @@ public class ApiTest {
         .jsonPath("$.[1].name")
         .isEqualTo("Lebron James");
   }
+
+  @Test
+  public void searchByEmailOrName_badLimit() {
+    webTestClient
+        .get()
+        .uri("/v1/users/search?name=jordan&limit=-1")
+        .exchange()
+        .expectStatus()
+        .isBadRequest();
+    webTestClient
+        .get()
+        .uri("/v1/users/search?name=jordan&limit=1001")
+        .exchange()
+        .expectStatus()
+        .isBadRequest();
+  }
+
+  @Test
+  public void readinessIncludesConnectionPool() {
+    webTestClient
+        .get()
+        .uri("/actuator/health/readiness")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.status")
+        .isEqualTo("UP");
+
+    assertTrue(meterRegistry.find("r2dbc.pool.acquire").timer().count() > 0);
+    assertTrue(meterRegistry.find("r2dbc.pool.acquired").gauge() != null);
+  }
+
+  @Test
+  public void prometheusExposesRouteLatencyAndRows() {
+    webTestClient.get().uri("/v1/users/search?name=jordan").exchange().expectStatus().isOk();
+
+    String metrics =
+        webTestClient
+            .get()
+            .uri("/actuator/prometheus")
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody();
+    assertTrue(
+        metrics.contains(
+            "http_server_requests_seconds_bucket{exception=\"None\",method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/v1/users/search\""));
+    assertTrue(
+        metrics.contains(
+            "http_server_requests_seconds{exception=\"None\",method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/v1/users/search\",quantile=\"0.99\",}"));
+    assertTrue(metrics.contains("http_server_rows_sum{uri=\"/v1/users/search\",} 1.0"));
+  }
+
+  @Test
+  public void statementsAreTimedByQueryShape() {
+    webTestClient.get().uri("/v1/users/age/30").exchange().expectStatus().isOk();
+
+    assertTrue(
+        meterRegistry.find("r2dbc.query").timers().stream()
+            .anyMatch(
+                timer ->
+                    timer.getId().getTag("shape").startsWith("select")
+                        && timer.getId().getTag("shape").contains("age >= ?")
+                        && timer.count() > 0));
+    assertEquals(
+        "SELECT * FROM users WHERE id IN (?) AND name = ? LIMIT ?",
+        QueryMetricsListener.shape(
+            "SELECT *  FROM users\n WHERE id IN ($1, $2, $3) AND name = 'O''Brien' LIMIT 10"));
+    assertEquals(
+        "INSERT INTO users (name, age) VALUES (?)",
+        QueryMetricsListener.shape("INSERT INTO users (name, age) VALUES ($1, $2), ($3, $4)"));
+  }
 }
@@ -0,0 +1,150 @@
+package com.usermanagement.reactive.test.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.usermanagement.reactive.model.User;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.reactive.server.ReactiveWebServerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+/** The API served fully reactive on Reactor Netty, with the netty profile */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DirtiesContext
+@AutoConfigureWebTestClient
+@ActiveProfiles({"test", "netty"})
+public class NettyRuntimeTest {
+
+  @Autowired private WebTestClient webTestClient;
+
+  @Autowired private ReactiveWebServerFactory webServerFactory;
+
+  @Test
+  public void runsOnNetty() {
+    assertTrue(webServerFactory instanceof NettyReactiveWebServerFactory);
+  }
+
+  @Test
+  public void createAndGetUser() {
+    User user = new User(null, "Ada Lovelace", 36, 5000, "ada@company.com");
+    User created =
+        webTestClient
+            .post()
+            .uri("/v1/users")
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(Mono.just(user), User.class)
+            .exchange()
+            .expectStatus()
+            .isCreated()
+            .expectBody(User.class)
+            .returnResult()
+            .getResponseBody();
+
+    webTestClient
+        .get()
+        .uri("/v1/users/{userId}", created.getId())
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.email")
+        .isEqualTo("ada@company.com");
+  }
+
+  @Test
+  public void createUsersInBatchFromNdjson() {
+    webTestClient
+        .post()
+        .uri("/v1/users/batch")
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .bodyValue(
+            "{\"name\":\"Katherine Johnson\",\"age\":50,\"salary\":6000,\"email\":\"katherine@company.com\"}\n"
+                + "{not json}\n")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.created")
+        .isEqualTo(1)
+        .jsonPath("$.rows[1].error")
+        .isEqualTo("Malformed user");
+  }
+
+  @Test
+  public void importUsersFromCsv() {
+    webTestClient
+        .post()
+        .uri("/v1/users/import")
+        .contentType(MediaType.valueOf("text/csv"))
+        .bodyValue("name,age,salary,email\nGrace Hopper,85,7000,grace@company.com\n")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.imported")
+        .isEqualTo(1)
+        .jsonPath("$.done")
+        .isEqualTo(true);
+  }
+
+  @Test
+  public void exportUsersAsCsv() {
+    webTestClient
+        .get()
+        .uri("/v1/users/export.csv")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectHeader()
+        .contentTypeCompatibleWith(MediaType.valueOf("text/csv"))
+        .expectBody(String.class)
+        .value(csv -> assertTrue(csv.startsWith("id,name,age,salary,email,version\n")));
+  }
+
+  @Test
+  public void getUserAsSmile() throws IOException {
+    MediaType smile = MediaType.valueOf("application/x-jackson-smile");
+    User user = new User(null, "Alan Turing", 41, 6000, "alan@company.com");
+    User created =
+        webTestClient
+            .post()
+            .uri("/v1/users")
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(Mono.just(user), User.class)
+            .exchange()
+            .expectBody(User.class)
+            .returnResult()
+            .getResponseBody();
+
+    byte[] body =
+        webTestClient
+            .get()
+            .uri("/v1/users/{userId}", created.getId())
+            .accept(smile)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .contentType(smile)
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+    assertEquals(
+        "alan@company.com",
+        new ObjectMapper(new SmileFactory()).readValue(body, User.class).getEmail());
+  }
+}
@@ -0,0 +1,347 @@
+package com.usermanagement.reactive.test.load;
+
+import com.usermanagement.reactive.UserManagementApplication;
+import com.usermanagement.reactive.dto.UserBatchResultDTO;
+import com.usermanagement.reactive.model.User;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Load generator for the Rest API. It boots the application on the test profile (in-memory H2),
+ * seeds it with users and drives a mix of endpoints, then prints the throughput and the latency
+ * percentiles of each endpoint. The full latency distributions are written to target/load as
+ * HdrHistogram .hgrm files.
+ *
+ * <p>The load is either open, a fixed arrival rate (rate), or closed, a fixed number of concurrent
+ * callers (concurrency, used when the rate is 0). With a fixed rate the latency is measured from
+ * the time the request was due, so that a slow server is not hidden by requests being sent late.
+ * Run it with: mvn -Pload -DskipTests verify -Dload.args="rate=2000"
+ *
+ * <p>Options, given as name=value, with their defaults: rate=1000 concurrency=64 warmup=10s
+ * duration=30s users=10000 connections=500 profiles=test (test,netty runs it fully reactive)
+ * mix=get:40,create:5,update:5,delete:5,search:15,page:15,ids:15 and base-url, to load an already
+ * running API instead of booting one (it is seeded all the same)
+ */
+public class LoadGenerator {
+  private static final long HIGHEST_LATENCY = Duration.ofMinutes(1).toNanos();
+  private static final int PAGE_SIZE = 20;
+
+  private final Map<String, String> options;
+  private final WebClient client;
+  private final List<Integer> seededIds = new ArrayList<>();
+  // Key each seeded user was created with, its email must not change when it is updated
+  private final Map<Integer, String> seedKeys = new HashMap<>();
+  private final ConcurrentLinkedQueue<Integer> createdIds = new ConcurrentLinkedQueue<>();
+  private final AtomicLong sequence = new AtomicLong();
+  private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+  private final String[] mix;
+
+  /** Latencies and errors of one endpoint */
+  private static class Endpoint {
+    final Histogram latencies = new ConcurrentHistogram(HIGHEST_LATENCY, 3);
+    final LongAdder errors = new LongAdder();
+    final Supplier<Mono<?>> request;
+
+    Endpoint(Supplier<Mono<?>> request) {
+      this.request = request;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      String[] option = arg.replaceFirst("^--", "").split("=", 2);
+      options.put(option[0], option.length > 1 ? option[1] : "true");
+    }
+
+    ConfigurableApplicationContext context = null;
+    String baseUrl = options.get("base-url");
+    if (baseUrl == null) {
+      context =
+          new SpringApplicationBuilder(UserManagementApplication.class)
+              .profiles(options.getOrDefault("profiles", "test").split(","))
+              .properties("server.port=0")
+              .run();
+      baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+    try {
+      new LoadGenerator(options, baseUrl).run();
+    } finally {
+      if (context != null) context.close();
+    }
+  }
+
+  public LoadGenerator(Map<String, String> options, String baseUrl) {
+    this.options = options;
+    ConnectionProvider connections =
+        ConnectionProvider.builder("load-generator")
+            .maxConnections(Integer.parseInt(options.getOrDefault("connections", "500")))
+            .pendingAcquireMaxCount(-1)
+            .build();
+    client =
+        WebClient.builder()
+            .baseUrl(baseUrl)
+            .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+            .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+            .build();
+
+    endpoints.put("get", new Endpoint(this::getUser));
+    endpoints.put("create", new Endpoint(this::createUser));
+    endpoints.put("update", new Endpoint(this::updateUser));
+    endpoints.put("delete", new Endpoint(this::deleteUser));
+    endpoints.put("search", new Endpoint(this::search));
+    endpoints.put("page", new Endpoint(this::page));
+    endpoints.put("ids", new Endpoint(this::searchIds));
+
+    // Each endpoint takes as many slots as its weight, a request picks a random slot
+    List<String> slots = new ArrayList<>();
+    String weights =
+        options.getOrDefault("mix", "get:40,create:5,update:5,delete:5,search:15,page:15,ids:15");
+    for (String weight : weights.split(",")) {
+      String[] endpointWeight = weight.split(":");
+      if (!endpoints.containsKey(endpointWeight[0]))
+        throw new IllegalArgumentException("Unknown endpoint " + endpointWeight[0]);
+      for (int i = 0; i < Integer.parseInt(endpointWeight[1]); i++) slots.add(endpointWeight[0]);
+    }
+    mix = slots.toArray(new String[0]);
+  }
+
+  public void run() throws IOException {
+    seed(Integer.parseInt(options.getOrDefault("users", "10000")));
+    Duration warmup = Duration.parse("PT" + options.getOrDefault("warmup", "10s"));
+    Duration duration = Duration.parse("PT" + options.getOrDefault("duration", "30s"));
+
+    System.out.println("Warming up for " + warmup);
+    load(warmup);
+    endpoints.values().forEach(endpoint -> endpoint.latencies.reset());
+    endpoints.values().forEach(endpoint -> endpoint.errors.reset());
+
+    System.out.println("Measuring for " + duration);
+    long start = System.nanoTime();
+    load(duration);
+    report((System.nanoTime() - start) / 1e9);
+  }
+
+  private void seed(int users) {
+    for (int from = 0; from < users; from += 1000) {
+      String body =
+          Flux.range(from, Math.min(1000, users - from))
+              .map(i -> json(newUser("seed" + i)))
+              .collect(Collectors.joining("\n"))
+              .block();
+      UserBatchResultDTO result =
+          client
+              .post()
+              .uri("/v1/users/batch")
+              .contentType(MediaType.APPLICATION_NDJSON)
+              .bodyValue(body)
+              .retrieve()
+              .bodyToMono(UserBatchResultDTO.class)
+              .block();
+      int first = from;
+      result.getRows().stream()
+          .filter(row -> row.getId() != null)
+          .forEach(
+              row -> {
+                seededIds.add(row.getId());
+                seedKeys.put(row.getId(), "seed" + (first + row.getIndex()));
+              });
+    }
+    System.out.println("Seeded " + seededIds.size() + " users");
+  }
+
+  private void load(Duration duration) {
+    long rate = Long.parseLong(options.getOrDefault("rate", "1000"));
+    int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+    long end = System.nanoTime() + duration.toNanos();
+    if (rate > 0) openLoad(rate, end).blockLast();
+    else closedLoad(concurrency, end).blockLast();
+  }
+
+  // Every millisecond sends the requests due by then, each timed from the moment it was due. A
+  // dropped tick only delays its requests to the next one
+  private Flux<Object> openLoad(long rate, long end) {
+    long start = System.nanoTime();
+    double interval = 1e9 / rate;
+    long[] sent = {0};
+    return Flux.interval(Duration.ofMillis(1))
+        .onBackpressureDrop()
+        .takeWhile(tick -> System.nanoTime() < end)
+        .concatMapIterable(
+            tick -> {
+              long due = (long) ((System.nanoTime() - start) / interval);
+              List<Long> starts = new ArrayList<>();
+              for (; sent[0] < due; sent[0]++) starts.add(start + (long) (sent[0] * interval));
+              return starts;
+            })
+        .flatMap(this::request, Integer.MAX_VALUE);
+  }
+
+  private Flux<Object> closedLoad(int concurrency, long end) {
+    return Flux.range(0, concurrency)
+        .flatMap(
+            caller ->
+                Mono.defer(() -> request(System.nanoTime())).repeat(() -> System.nanoTime() < end),
+            concurrency);
+  }
+
+  private Mono<Object> request(long start) {
+    Endpoint endpoint = endpoints.get(mix[ThreadLocalRandom.current().nextInt(mix.length)]);
+    return endpoint
+        .request
+        .get()
+        .doOnSuccess(response -> endpoint.latencies.recordValue(System.nanoTime() - start))
+        .doOnError(e -> endpoint.errors.increment())
+        .onErrorResume(e -> Mono.empty())
+        .map(Object.class::cast);
+  }
+
+  private Mono<?> getUser() {
+    return client.get().uri("/v1/users/{id}", seededId()).retrieve().toBodilessEntity();
+  }
+
+  private Mono<?> createUser() {
+    return client
+        .post()
+        .uri("/v1/users")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(newUser("load" + sequence.incrementAndGet()))
+        .retrieve()
+        .bodyToMono(User.class)
+        .doOnNext(user -> createdIds.add(user.getId()));
+  }
+
+  private Mono<?> updateUser() {
+    Integer id = seededId();
+    return client
+        .put()
+        .uri("/v1/users/{id}", id)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(newUser(seedKeys.get(id)))
+        .retrieve()
+        .toBodilessEntity();
+  }
+
+  // Only users created by the load are deleted, so that the seeded users stay available
+  private Mono<?> deleteUser() {
+    Integer id = createdIds.poll();
+    if (id == null) return createUser();
+    return client.delete().uri("/v1/users/{id}", id).retrieve().toBodilessEntity();
+  }
+
+  private Mono<?> search() {
+    return client
+        .get()
+        .uri("/v1/users/search?name={name}&limit={limit}", "user " + seededId(), PAGE_SIZE)
+        .retrieve()
+        .toBodilessEntity();
+  }
+
+  private Mono<?> page() {
+    int page = ThreadLocalRandom.current().nextInt(Math.max(1, seededIds.size() / PAGE_SIZE));
+    return client
+        .get()
+        .uri("/v1/users/all?page={page}&size={size}", page, PAGE_SIZE)
+        .retrieve()
+        .toBodilessEntity();
+  }
+
+  private Mono<?> searchIds() {
+    List<Integer> ids = new ArrayList<>(PAGE_SIZE);
+    for (int i = 0; i < PAGE_SIZE; i++) ids.add(seededId());
+    return client
+        .post()
+        .uri("/v1/users/search/id")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(ids)
+        .retrieve()
+        .toBodilessEntity();
+  }
+
+  private Integer seededId() {
+    return seededIds.get(ThreadLocalRandom.current().nextInt(seededIds.size()));
+  }
+
+  private static User newUser(String key) {
+    int n = Math.abs(key.hashCode());
+    return new User(null, "User " + key, 1 + n % 80, 1000 + n % 100000, key + "@company.com");
+  }
+
+  private static String json(User user) {
+    return String.format(
+        "{\"name\":\"%s\",\"age\":%d,\"salary\":%s,\"email\":\"%s\"}",
+        user.getName(), user.getAge(), user.getSalary(), user.getEmail());
+  }
+
+  private void report(double seconds) throws IOException {
+    Path directory = Paths.get("target", "load");
+    Files.createDirectories(directory);
+    System.out.printf(
+        "%n%-8s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+        "endpoint",
+        "requests",
+        "errors",
+        "req/s",
+        "p50 ms",
+        "p90 ms",
+        "p99 ms",
+        "p99.9 ms",
+        "max ms");
+    Histogram total = new Histogram(HIGHEST_LATENCY, 3);
+    long errors = 0;
+    for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+      Histogram latencies = entry.getValue().latencies;
+      if (latencies.getTotalCount() == 0 && entry.getValue().errors.sum() == 0) continue;
+      print(entry.getKey(), latencies, entry.getValue().errors.sum(), seconds);
+      total.add(latencies);
+      errors += entry.getValue().errors.sum();
+      try (PrintStream out =
+          new PrintStream(
+              new FileOutputStream(directory.resolve(entry.getKey() + ".hgrm").toFile()))) {
+        latencies.outputPercentileDistribution(out, 1e6);
+      }
+    }
+    print("total", total, errors, seconds);
+  }
+
+  private static void print(String name, Histogram latencies, long errors, double seconds) {
+    System.out.printf(
+        "%-8s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+        name,
+        latencies.getTotalCount() + errors,
+        errors,
+        (latencies.getTotalCount() + errors) / seconds,
+        latencies.getValueAtPercentile(50) / 1e6,
+        latencies.getValueAtPercentile(90) / 1e6,
+        latencies.getValueAtPercentile(99) / 1e6,
+        latencies.getValueAtPercentile(99.9) / 1e6,
+        latencies.getMaxValue() / 1e6);
+  }
+}
@@ -0,0 +1,96 @@
+package com.usermanagement.reactive.test.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.usermanagement.reactive.model.User;
+import com.usermanagement.reactive.search.UserSearchIndex;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests the in-memory search index without a Spring context */
+public class UserSearchIndexTest {
+
+  private UserSearchIndex index;
+
+  @BeforeEach
+  public void setup() {
+    index = new UserSearchIndex(100);
+    index.onCreated(new User(1, "Jordan Sun", 30, 10000, "jordansun@company.com"));
+    index.onCreated(new User(2, "Satoshi Nakamoto", 5, 1000, "satoshi@company.com"));
+    index.onCreated(new User(3, "Lebron James", 34, 10000, "ljames@company.com"));
+    index.onCreated(new User(4, "Michael Jordan", 60, 1000, "mjordan@company.com"));
+  }
+
+  private List<Integer> ids(List<User> users) {
+    return users.stream().map(User::getId).collect(Collectors.toList());
+  }
+
+  @Test
+  public void searchByNamePrefix() {
+    assertEquals(ids(index.search(null, "Satoshi N", 10)).get(0), 2);
+    assertEquals(1, index.search(null, "lebr", 10).size());
+  }
+
+  @Test
+  public void searchRanksExactTokensFirst() {
+    index.onCreated(new User(5, "Jordana Smith", 41, 5000, "jsmith@company.com"));
+    List<Integer> ids = ids(index.search(null, "jordan", 10));
+    assertEquals(3, ids.size());
+    assertEquals(5, ids.get(2));
+  }
+
+  @Test
+  public void searchByEmailOrName() {
+    List<Integer> ids = ids(index.search("Satoshi@company.com", "Lebr", 10));
+    assertEquals(2, ids.get(0));
+    assertEquals(3, ids.get(1));
+  }
+
+  @Test
+  public void searchToleratesTypos() {
+    assertEquals(ids(index.search(null, "Nakamto", 10)).get(0), 2);
+  }
+
+  @Test
+  public void searchHonoursLimit() {
+    assertEquals(1, index.search(null, "jordan", 1).size());
+  }
+
+  @Test
+  public void indexFollowsUpdatesAndDeletes() {
+    User before = new User(3, "Lebron James", 34, 10000, "ljames@company.com");
+    User after = new User(3, "Kevin Durant", 34, 10000, "kdurant@company.com");
+    index.onUpdated(before, after);
+    assertTrue(index.search(null, "lebron", 10).isEmpty());
+    assertEquals(ids(index.search("kdurant@company.com", null, 10)).get(0), 3);
+
+    index.onDeleted(after);
+    assertTrue(index.search(null, "kevin", 10).isEmpty());
+    assertEquals(3, index.size());
+  }
+
+  @Test
+  public void searchMatchesEmailsExactly() {
+    assertEquals(2, ids(index.search("SATOSHI@company.com", null, 10)).get(0));
+    assertTrue(index.search("satoshi", null, 10).isEmpty());
+  }
+
+  @Test
+  public void searchLooksAtExactTokensBeforeCappingPrefixes() {
+    UserSearchIndex capped = new UserSearchIndex(2);
+    capped.onCreated(new User(1, "Jo Adams", 30, 1000, "adams@company.com"));
+    capped.onCreated(new User(2, "Joan Baker", 30, 1000, "baker@company.com"));
+    capped.onCreated(new User(3, "Joe Clark", 30, 1000, "clark@company.com"));
+    capped.onCreated(new User(4, "John Doe", 30, 1000, "doe@company.com"));
+    capped.onCreated(new User(5, "Jo Evans", 30, 1000, "evans@company.com"));
+
+    // The two exact matches fill the candidates, the prefixes are not expanded
+    assertEquals(2, capped.search(null, "jo", 10).size());
+    assertEquals(1, ids(capped.search(null, "jo", 10)).get(0));
+    assertEquals(5, ids(capped.search(null, "jo", 10)).get(1));
+    assertEquals(2, ids(capped.search(null, "joa", 10)).get(0));
+  }
+}
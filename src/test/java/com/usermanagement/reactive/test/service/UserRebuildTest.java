@@ -0,0 +1,71 @@
+package com.usermanagement.reactive.test.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.usermanagement.reactive.model.User;
+import com.usermanagement.reactive.service.UserRebuild;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class UserRebuildTest {
+  private UserRebuild<Users> rebuild;
+
+  @BeforeEach
+  public void setUp() {
+    rebuild = new UserRebuild<>(new Users());
+  }
+
+  private static User user(int id, String name, long version) {
+    return new User(id, name, 30, 1000, "user" + id + "@company.com", version);
+  }
+
+  @Test
+  public void newerVersionReplacesTheRowRead() {
+    rebuild.put(user(1, "Jordan Sun", 0));
+    rebuild.put(user(1, "Jordan Moon", 1));
+
+    assertEquals("Jordan Moon", rebuild.view().users.get(1).getName());
+    assertEquals(1, rebuild.view().size);
+  }
+
+  @Test
+  public void olderRowReadAfterAWriteIsIgnored() {
+    rebuild.put(user(1, "Jordan Moon", 1));
+    rebuild.put(user(1, "Jordan Sun", 0));
+
+    assertEquals("Jordan Moon", rebuild.view().users.get(1).getName());
+    assertEquals(1, rebuild.view().size);
+  }
+
+  @Test
+  public void deletedUserIsNotAddedBack() {
+    rebuild.put(user(1, "Jordan Sun", 0));
+    rebuild.delete(1);
+    rebuild.delete(2);
+    rebuild.put(user(2, "Satoshi Nakamoto", 0));
+
+    assertTrue(rebuild.view().users.isEmpty());
+    assertEquals(0, rebuild.view().size);
+  }
+
+  // Counts the users like the aggregates do, so that a user added twice would show
+  private static final class Users implements UserRebuild.View {
+    private final Map<Integer, User> users = new HashMap<>();
+    private int size;
+
+    @Override
+    public void add(User user) {
+      users.put(user.getId(), user);
+      size++;
+    }
+
+    @Override
+    public void remove(User user) {
+      users.remove(user.getId());
+      size--;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.usermanagement.reactive.test.utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.usermanagement.reactive.utilities.SingleFlight;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+public class SingleFlightTest {
+  private final SingleFlight<Integer, String> flights = new SingleFlight<>();
+  private final AtomicInteger loads = new AtomicInteger();
+  private final Sinks.One<String> result = Sinks.one();
+
+  private Mono<String> load(Integer key) {
+    loads.incrementAndGet();
+    return result.asMono();
+  }
+
+  @Test
+  void concurrentCallsShareOneLoad() {
+    Mono<String> first = flights.execute(1, this::load);
+    Mono<String> second = flights.execute(1, this::load);
+    StepVerifier.create(Flux.merge(first, second))
+        .then(() -> result.tryEmitValue("one"))
+        .expectNext("one", "one")
+        .verifyComplete();
+    assertEquals(1, loads.get());
+    assertEquals(0, flights.size());
+
+    // Nothing is cached once the load is over
+    flights.execute(1, key -> Mono.just("again")).block();
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void errorsReachEveryCallerAndAreNotKept() {
+    StepVerifier.create(Flux.merge(flights.execute(1, this::load), flights.execute(1, this::load)))
+        .then(() -> result.tryEmitError(new IllegalStateException("down")))
+        .verifyErrorMessage("down");
+    assertEquals(1, loads.get());
+    assertEquals(0, flights.size());
+    StepVerifier.create(flights.execute(1, key -> Mono.just("up")))
+        .expectNext("up")
+        .verifyComplete();
+  }
+
+  @Test
+  void loadIsOnlyCancelledOnceAllCallersCancel() {
+    AtomicBoolean cancelled = new AtomicBoolean();
+    Mono<String> shared =
+        flights.execute(1, key -> load(key).doOnCancel(() -> cancelled.set(true)));
+    List<String> received = new ArrayList<>();
+    Disposable first = shared.subscribe(received::add);
+    Disposable second = shared.subscribe(received::add);
+
+    first.dispose();
+    assertTrue(!cancelled.get());
+    assertEquals(1, flights.size());
+    second.dispose();
+    assertTrue(cancelled.get());
+    assertEquals(0, flights.size());
+    assertTrue(received.isEmpty());
+  }
+
+  @Test
+  void batchesJoinLoadsInFlightAndLoadTheOthersTogether() {
+    Mono<String> single = flights.execute(2, this::load);
+    List<List<Integer>> batches = new ArrayList<>();
+    Flux<String> batch =
+        flights.executeAll(
+            Arrays.asList(1, 2, 3),
+            value -> Integer.valueOf(value.substring(1)),
+            keys -> {
+              batches.add(keys);
+              return Flux.fromIterable(keys).filter(key -> key != 3).map(key -> "u" + key);
+            });
+    StepVerifier.create(Flux.merge(single, batch).sort().collectList())
+        .then(() -> result.tryEmitValue("u2"))
+        .assertNext(values -> assertEquals(Arrays.asList("u1", "u2", "u2"), values))
+        .verifyComplete();
+    assertEquals(Arrays.asList(Arrays.asList(1, 3)), batches);
+    assertEquals(1, loads.get());
+    assertEquals(0, flights.size());
+  }
+
+  @Test
+  void callersJoiningABatchBeingStartedGetItsValues() throws Exception {
+    List<Integer> keys = new ArrayList<>();
+    for (int key = 0; key < 64; key++) keys.add(key);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      for (int round = 0; round < 500; round++) {
+        SingleFlight<Integer, Integer> lookups = new SingleFlight<>();
+        CyclicBarrier start = new CyclicBarrier(2);
+        // One caller registers the batch while the other joins its keys one by one
+        Future<List<Integer>> batch =
+            executor.submit(
+                () -> {
+                  start.await();
+                  return lookups
+                      .executeAll(keys, value -> value, Flux::fromIterable)
+                      .collectList()
+                      .block();
+                });
+        Future<List<Integer>> singles =
+            executor.submit(
+                () -> {
+                  start.await();
+                  return Flux.fromIterable(keys)
+                      .concatMap(key -> lookups.execute(key, Mono::just))
+                      .collectList()
+                      .block();
+                });
+        assertEquals(keys, batch.get(10, TimeUnit.SECONDS));
+        assertEquals(keys, singles.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
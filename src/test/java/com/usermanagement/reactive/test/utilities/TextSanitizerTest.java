@@ -0,0 +1,97 @@
+package com.usermanagement.reactive.test.utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.usermanagement.reactive.utilities.TextSanitizer;
+import java.util.Optional;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+/** Checks TextSanitizer against the regular expressions it replaced */
+public class TextSanitizerTest {
+  private static final Pattern spacePattern = Pattern.compile("\\s+");
+  private static final Pattern apostrophePattern = Pattern.compile("['’’‘`]+");
+  private static final Pattern punctuationPattern =
+      Pattern.compile("[!\"“”#$%()*�+,\\\\/:±;<【】=>?\\[\\]\\^™{|}~®（）一°]+");
+
+  // Characters whose handling differs, plus a few that are kept as is
+  private static final char[] ALPHABET = {
+    'a', 'Z', ' ', '\t', '\n', '\u000B', '\u0001', '\u001F', ' ', '\'', '’', '`', ',', '[', '\\',
+    '一', '-', 'é'
+  };
+
+  private static String regexSanitize(String text) {
+    return spacePattern
+        .matcher(
+            punctuationPattern
+                .matcher(
+                    apostrophePattern.matcher(Optional.ofNullable(text).orElse("")).replaceAll(""))
+                .replaceAll(" "))
+        .replaceAll(" ")
+        .trim();
+  }
+
+  private static void assertSameAsRegex(String text) {
+    assertEquals(regexSanitize(text), TextSanitizer.sanitize(text), () -> "for " + escape(text));
+  }
+
+  private static String escape(String text) {
+    StringBuilder escaped = new StringBuilder();
+    for (char c : text.toCharArray()) escaped.append(String.format("\\u%04X", (int) c));
+    return escaped.toString();
+  }
+
+  @Test
+  public void everyCharacterInContext() {
+    for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+      String s = String.valueOf((char) c);
+      assertSameAsRegex(s);
+      assertSameAsRegex(s + s);
+      assertSameAsRegex("a" + s + "b");
+      assertSameAsRegex(" " + s + " a");
+      assertSameAsRegex("a " + s);
+      assertSameAsRegex("a'" + s + ",b");
+    }
+  }
+
+  @Test
+  public void everyShortString() {
+    char[] text = new char[5];
+    for (int length = 0; length <= text.length; length++) {
+      int combinations = (int) Math.pow(ALPHABET.length, length);
+      for (int n = 0; n < combinations; n++) {
+        for (int i = 0, rest = n; i < length; i++, rest /= ALPHABET.length)
+          text[i] = ALPHABET[rest % ALPHABET.length];
+        assertSameAsRegex(new String(text, 0, length));
+      }
+    }
+  }
+
+  @Test
+  public void randomStrings() {
+    Random random = new Random(42);
+    for (int n = 0; n < 100000; n++) {
+      char[] text = new char[random.nextInt(40)];
+      for (int i = 0; i < text.length; i++)
+        text[i] =
+            random.nextInt(4) == 0
+                ? (char) random.nextInt(Character.MAX_VALUE + 1)
+                : ALPHABET[random.nextInt(ALPHABET.length)];
+      assertSameAsRegex(new String(text));
+    }
+  }
+
+  @Test
+  public void nullIsEmpty() {
+    assertEquals("", TextSanitizer.sanitize(null));
+  }
+
+  @Test
+  public void cleanTextIsReturnedAsIs() {
+    String text = "Jordan Sun jordansun@company.com";
+    assertSame(text, TextSanitizer.sanitize(text));
+    assertEquals("Jordan Sun", TextSanitizer.sanitize("  Jordan,  Sun' "));
+  }
+}